@@ -0,0 +1,127 @@
+package benchmarks;
+
+import internal.quadtree.LinearQuadTree;
+import internal.spatial.IntList;
+import internal.spatial.KNearest;
+import internal.spatial.Motions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The same builds and queries as QuadTreeBenchmark on a LinearQuadTree, by leaf bucket size and maximum depth
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LinearQuadTreeBenchmark {
+
+    private static final double width = 1920;
+    private static final double height = 1080;
+
+    @Param({"1000", "10000", "50000"})
+    public int entities;
+
+    @Param({"1", "8", "32"})
+    public int bucket;
+
+    @Param({"10"})
+    public int depth;
+
+    private double[] x;
+    private double[] y;
+    private Motions motions;
+    private LinearQuadTree tree;
+    private final IntList ids = new IntList();
+    private final IntList result = new IntList(1024);
+    private final KNearest nearest = new KNearest(7);
+
+    @Setup
+    public void setup() {
+        Random rng = new Random(42);
+        x = new double[entities];
+        y = new double[entities];
+        for(int i = 0; i < entities; i++) {
+            x[i] = rng.nextDouble() * width;
+            y[i] = rng.nextDouble() * height;
+            ids.add(i);
+        }
+
+        // All of one species, moving right
+        motions = new Motions() {
+            @Override
+            public double x(int id) {
+                return x[id];
+            }
+
+            @Override
+            public double y(int id) {
+                return y[id];
+            }
+
+            @Override
+            public double vx(int id) {
+                return 1;
+            }
+
+            @Override
+            public double vy(int id) {
+                return 0;
+            }
+
+            @Override
+            public float hue(int id) {
+                return 0;
+            }
+
+            @Override
+            public int size(int id) {
+                return 3;
+            }
+        };
+
+        tree = new LinearQuadTree(bucket, depth);
+        tree.build(motions, ids, 0, 0, width, height);
+        tree.sum(motions);
+    }
+
+    @Benchmark
+    public LinearQuadTree build() {
+        tree.build(motions, ids, 0, 0, width, height);
+        return tree;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void query(Blackhole bh) {
+        for(int i = 0; i < 1000; i++) {
+            result.clear();
+            tree.query(x[i] - 50, y[i] - 50, 100, 100, result);
+            bh.consume(result.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void nearest(Blackhole bh) {
+        for(int i = 0; i < 1000; i++) {
+            int self = i;
+            nearest.reset(7);
+            tree.nearest(x[i], y[i], 50 * 50, (id, dx, dy) -> id != self, nearest);
+            bh.consume(nearest.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void querySums(Blackhole bh) {
+        for(int i = 0; i < 1000; i++) {
+            result.clear();
+            tree.querySums(x[i], y[i], 0, 0, 50 * 50, 25 * 25, 0.5 * 0.5, 3, (count, sx, sy, vx, vy, hue) -> bh.consume(count), result);
+            bh.consume(result.size());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import internal.quadtree.QuadTree;
+import internal.spatial.IntList;
+import internal.spatial.KNearest;
+import internal.spatial.Motions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Building and querying one QuadTree over a 1920x1080 world at several densities
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QuadTreeBenchmark {
+
+    private static final double width = 1920;
+    private static final double height = 1080;
+
+    @Param({"1000", "10000", "50000"})
+    public int entities;
+
+    private double[] x;
+    private double[] y;
+    private QuadTree tree;
+    private final IntList result = new IntList(1024);
+    private final KNearest nearest = new KNearest(7);
+
+    @Setup
+    public void setup() {
+        Random rng = new Random(42);
+        x = new double[entities];
+        y = new double[entities];
+        for(int i = 0; i < entities; i++) {
+            x[i] = rng.nextDouble() * width;
+            y[i] = rng.nextDouble() * height;
+        }
+
+        // All of one species, moving right
+        Motions motions = new Motions() {
+            @Override
+            public double x(int id) {
+                return x[id];
+            }
+
+            @Override
+            public double y(int id) {
+                return y[id];
+            }
+
+            @Override
+            public double vx(int id) {
+                return 1;
+            }
+
+            @Override
+            public double vy(int id) {
+                return 0;
+            }
+
+            @Override
+            public float hue(int id) {
+                return 0;
+            }
+
+            @Override
+            public int size(int id) {
+                return 3;
+            }
+        };
+
+        tree = new QuadTree(motions, 0, 0, width-1, height-1, 1);
+        insertAll();
+        tree.sum(motions);
+    }
+
+    @Benchmark
+    public QuadTree insert() {
+        tree.reset(0, 0, width-1, height-1);
+        insertAll();
+        return tree;
+    }
+
+    // One 100x100 neighbourhood query per entity, as a tick does
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void query(Blackhole bh) {
+        for(int i = 0; i < 1000; i++) {
+            result.clear();
+            tree.query(x[i] - 50, y[i] - 50, 100, 100, result);
+            bh.consume(result.size());
+        }
+    }
+
+    // The seven nearest within the same range per entity, as a tick flocking topologically does
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void nearest(Blackhole bh) {
+        for(int i = 0; i < 1000; i++) {
+            int self = i;
+            nearest.reset(7);
+            tree.nearest(x[i], y[i], 50 * 50, (id, dx, dy) -> id != self, nearest);
+            bh.consume(nearest.size());
+        }
+    }
+
+    // The same range with far away groups summed up, as a tick with an opening angle of 0.5 does
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void querySums(Blackhole bh) {
+        for(int i = 0; i < 1000; i++) {
+            result.clear();
+            tree.querySums(x[i], y[i], 0, 0, 50 * 50, 25 * 25, 0.5 * 0.5, 3, (count, sx, sy, vx, vy, hue) -> bh.consume(count), result);
+            bh.consume(result.size());
+        }
+    }
+
+    private void insertAll() {
+        for(int i = 0; i < entities; i++)
+            tree.insert(i);
+    }
+}
@@ -0,0 +1,111 @@
+package benchmarks;
+
+import internal.Config;
+import internal.Steering;
+import internal.spatial.IntList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The per boid steering pass of Boid.run over a given number of flockmates, predators and prey,
+// one neighbour at a time and in batches, which run on vector lanes when vectorised
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class SteeringBenchmark {
+
+    @Param({"8", "64", "256"})
+    public int neighbours;
+
+    @Param({"false", "true"})
+    public boolean vectorised;
+
+    private Steering steering;
+    private final IntList eatable = new IntList();
+    private double[] dx;
+    private double[] dy;
+    private double[] vx;
+    private double[] vy;
+    private float[] hue;
+    private double[] hues;
+    private double[] predatorDx, predatorDy, preyDx, preyDy;
+
+    @Setup
+    public void setup() {
+        Steering.vectorised = vectorised;
+        steering = Steering.create(new Config());
+
+        Random rng = new Random(42);
+        dx = new double[neighbours];
+        dy = new double[neighbours];
+        vx = new double[neighbours];
+        vy = new double[neighbours];
+        hue = new float[neighbours];
+        hues = new double[neighbours];
+        for(int i = 0; i < neighbours; i++) {
+            dx[i] = rng.nextDouble() * 100 - 50;
+            dy[i] = rng.nextDouble() * 100 - 50;
+            vx[i] = rng.nextDouble() * 4 - 2;
+            vy[i] = rng.nextDouble() * 4 - 2;
+            hue[i] = rng.nextFloat();
+            hues[i] = hue[i];
+        }
+
+        // The batch rules take each relation's neighbours in arrays of their own
+        int third = neighbours / 3;
+        predatorDx = Arrays.copyOfRange(dx, third, third * 2);
+        predatorDy = Arrays.copyOfRange(dy, third, third * 2);
+        preyDx = Arrays.copyOfRange(dx, third * 2, neighbours);
+        preyDy = Arrays.copyOfRange(dy, third * 2, neighbours);
+    }
+
+    @Benchmark
+    public double flock() {
+        steering.begin(1.5, -0.5);
+        for(int i = 0; i < neighbours; i++)
+            steering.flockmate(dx[i], dy[i], vx[i], vy[i], hue[i]);
+
+        steering.finish();
+        return steering.vx() + steering.vy() + steering.hue(0);
+    }
+
+    @Benchmark
+    public double ecosystem() {
+        steering.begin(1.5, -0.5);
+        int third = neighbours / 3;
+        for(int i = 0; i < third; i++)
+            steering.flockmate(dx[i], dy[i], vx[i], vy[i], hue[i]);
+        for(int i = third; i < third * 2; i++)
+            steering.predator(dx[i], dy[i]);
+        for(int i = third * 2; i < neighbours; i++)
+            steering.prey(dx[i], dy[i]);
+
+        steering.finish();
+        return steering.vx() + steering.vy();
+    }
+
+    @Benchmark
+    public double flockBatch() {
+        steering.begin(1.5, -0.5);
+        steering.flock(dx, dy, vx, vy, hues, neighbours);
+        steering.finish();
+        return steering.vx() + steering.vy() + steering.hue(0);
+    }
+
+    @Benchmark
+    public double ecosystemBatch() {
+        steering.begin(1.5, -0.5);
+        int third = neighbours / 3;
+        steering.flock(dx, dy, vx, vy, hues, third);
+        steering.predators(predatorDx, predatorDy, third);
+        eatable.clear();
+        steering.prey(preyDx, preyDy, neighbours - third * 2, eatable);
+        steering.finish();
+        return steering.vx() + steering.vy();
+    }
+}
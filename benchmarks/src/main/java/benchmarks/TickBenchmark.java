@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import simulation.Indexing;
+import simulation.Storage;
+import simulation.World;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One full headless tick, from list maintenance through index build to steering
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TickBenchmark {
+
+    @Param({"flocking", "ecosystem"})
+    public String mode;
+
+    @Param({"1000", "5000"})
+    public int entities;
+
+    @Param({"3", "5"})
+    public int species;
+
+    @Param({"OBJECTS", "DOUBLE"})
+    public Storage storage;
+
+    @Param({"QUADTREE", "GRID", "LINEAR"})
+    public Indexing indexing;
+
+    private World world;
+
+    // A fresh world per iteration keeps the ecosystem population comparable between iterations
+    @Setup(Level.Iteration)
+    public void setup() {
+        world = World.create(storage, indexing, 1, species, 1920, 1080);
+        world.getConfig().flockingMode = mode.equals("flocking");
+
+        Random rng = new Random(42);
+        int sizes = world.getConfig().flockingMode ? 1 : species;
+        for(int i = 0; i < entities; i++)
+            world.spawn(rng.nextDouble() * 1920, rng.nextDouble() * 1080, World.smallestBoid + i % sizes);
+
+        world.step(10);
+    }
+
+    @Benchmark
+    public World tick() {
+        world.step();
+        return world;
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import simulation.Indexing;
+import simulation.RemoteWorld;
+import simulation.Storage;
+import simulation.ViewServer;
+import simulation.World;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// A flocking tick served to a number of RemoteWorld viewers over loopback, each watching the whole world
+// every tick, to show how much the simulation thread pays for them
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ViewServerBenchmark {
+
+    @Param({"5000"})
+    public int entities;
+
+    @Param({"0", "1", "4"})
+    public int viewers;
+
+    private World world;
+    private ViewServer server;
+    private final List<RemoteWorld> remotes = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        world = World.create(Storage.DOUBLE, Indexing.QUADTREE, 1, 5, 1920, 1080);
+        Random rng = new Random(42);
+        for(int i = 0; i < entities; i++)
+            world.spawn(rng.nextDouble() * 1920, rng.nextDouble() * 1080, World.smallestBoid);
+
+        server = new ViewServer(0);
+        world.setViewers(server);
+        for(int i = 0; i < viewers; i++)
+            remotes.add(new RemoteWorld("localhost", server.getPort(), 5, 1));
+        while(server.getViewers() < viewers)
+            Thread.sleep(10);
+
+        world.step(10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for(RemoteWorld remote : remotes)
+            remote.close();
+        server.close();
+    }
+
+    @Benchmark
+    public World tick() {
+        world.step();
+        return world;
+    }
+}
@@ -1,14 +1,126 @@
+import internal.FoodWeb;
+import internal.Steering;
+import simulation.Checkpoint;
 import simulation.Environment;
+import simulation.Headless;
+import simulation.Indexing;
+import simulation.PopulationStats;
+import simulation.Recorder;
+import simulation.Recording;
+import simulation.RemoteWorld;
+import simulation.ReplayWorld;
+import simulation.Storage;
+import simulation.World;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 public class Boids {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if(Arrays.asList(args).contains("--headless")) {
+            Headless.main(args);
+            return;
+        }
+
+        Storage storage = Storage.OBJECTS;
+        Indexing indexing = Indexing.QUADTREE;
+        boolean active = false;
+        int[] lod = null;
+        Path record = null;
+        Path replay = null;
+        String connect = null;
+        int every = 1;
+        Path restore = null;
+        Path checkpoint = null;
+        Path statsFile = null;
+        String webSpec = null;
+        int[] worldSize = null;
+        Integer nearest = null;
+        Double openingAngle = null;
+        Double skin = null;
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--storage" : storage = Storage.valueOf(args[++i].toUpperCase()); break;
+                case "--index" : indexing = Indexing.valueOf(args[++i].toUpperCase()); break;
+                case "--active" : active = true; break;
+                case "--record" : record = Path.of(args[++i]); break;
+                case "--replay" : replay = Path.of(args[++i]); break;
+                case "--connect" : connect = args[++i]; break;
+                case "--every" : every = Integer.parseInt(args[++i]); break;
+                case "--restore" : restore = Path.of(args[++i]); break;
+                case "--checkpoint" : checkpoint = Path.of(args[++i]); break;
+                case "--web" : webSpec = args[++i]; break;
+                case "--stats" : statsFile = Path.of(args[++i]); break;
+                case "--simd" : Steering.vectorised = true; break;
+                case "--nearest" : nearest = Integer.parseInt(args[++i]); break;
+                case "--opening-angle" : openingAngle = Double.parseDouble(args[++i]); break;
+                case "--skin" : skin = Double.parseDouble(args[++i]); break;
+                case "--world" : worldSize = Arrays.stream(args[++i].split("x")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--lod" : lod = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                default : throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        // Only the array kernels group flockmates or keep neighbour lists
+        if(storage == Storage.OBJECTS && (openingAngle != null || skin != null))
+            throw new IllegalArgumentException("--opening-angle and --skin need --storage double or float");
+
+        // Files are opened up front so a bad path fails before the window appears
+        Recording recording = replay != null ? new Recording(replay) : null;
+        RemoteWorld remote = connect != null ? connect(connect, every) : null;
+        Checkpoint restored = restore != null ? Checkpoint.read(restore) : null;
+        int species = restored != null ? restored.getSpecies() : 5;
+        Recorder recorder = record != null ? new Recorder(record, species) : null;
+        FoodWeb web = webSpec != null ? FoodWeb.parse(species, webSpec) : null;
+        PopulationStats stats = statsFile != null ? new PopulationStats(statsFile, species) : null;
+
+        Storage s = storage;
+        Indexing ix = indexing;
+        boolean a = active;
+        int[] l = lod;
+        Path c = checkpoint;
+        int[] size = worldSize;
+        Integer k = nearest;
+        Double theta = openingAngle;
+        Double verlet = skin;
         SwingUtilities.invokeLater(() -> {
-            Environment e = new Environment(5);
+            Environment e;
+            if(recording != null) e = new Environment(new ReplayWorld(recording), 20);
+            else if(remote != null) e = new Environment(remote, 20);
+            else {
+                World world = restored != null
+                    ? restored.restore(s, ix, Runtime.getRuntime().availableProcessors())
+                    : World.create(s, ix, Runtime.getRuntime().availableProcessors(), 5, 0, 0);
+                // Given over a restored world, the food web replaces the one it was saved with
+                if(web != null) world.setFoodWeb(web);
+                if(k != null) world.getConfig().nearestFlockmates = k;
+                if(theta != null) world.getConfig().openingAngle = theta;
+                if(verlet != null) world.getConfig().neighbourSkin = verlet;
+                e = new Environment(world, 20);
+            }
+            // A restored world keeps the size it was saved with
+            if(size != null) e.setWorldSize(size[0], size[1]);
+            else if(restored != null) e.setWorldSize(restored.getWidth(), restored.getHeight());
+            if(c != null) e.setCheckpointFile(c);
+            e.setActiveRendering(a);
+            if(l != null) e.setDetailThresholds(l[0], l[1], l[2]);
+            if(recorder != null) e.setRecorder(recorder);
+            if(stats != null) e.setStats(stats);
+            // Closing the window exits, which still finishes files and lets go of the world's threads
+            Runtime.getRuntime().addShutdownHook(new Thread(e::stop));
+
             e.display();
             e.start();
         });
     }
-}
\ No newline at end of file
+
+    // host:port of a headless run started with --serve, or just its port
+    private static RemoteWorld connect(String address, int every) throws IOException {
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? "localhost" : address.substring(0, colon);
+        return new RemoteWorld(host, Integer.parseInt(address.substring(colon + 1)), 5, every);
+    }
+}
@@ -1,298 +1,156 @@
 package internal;
 
 import internal.quadtree.Vector;
-import simulation.Environment;
+import simulation.ObjectWorld;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static internal.spatial.UniformGrid.wrap;
 import static java.lang.Math.PI;
-import static java.lang.Math.random;
 
 @SuppressWarnings("All")
 public class Boid {
 
-    private static final double maxVelocity = 10;
-    private static final double maxForce = 0.5;
-    private static final double viewRange = 50;
-    private static final double viewAngle = PI*0.85;
-    private static final int startingLife = 100;
+    public static final double maxVelocity = 10;
+    public static final double maxForce = 0.5;
+    public static final double viewRange = 50;
+    public static final double viewAngle = PI*0.85;
+    public static final int startingLife = 100;
+    public static final double eatRange = 20;
 
-    private static final int desiredSeparation = 25;
-    private static final int desiredAlignment = 50;
-    private static final int desiredCohesion = 50;
-    private static final int desiredAvoidance = 50;
-    private static final int desiredAttraction = 50;
+    public static final int desiredSeparation = 25;
+    public static final int desiredAlignment = 50;
+    public static final int desiredCohesion = 50;
+    public static final int desiredAvoidance = 50;
+    public static final int desiredAttraction = 50;
 
-    public static double separationWeight = 2.5;
-    public static double alignmentWeight = 1.5;
-    public static double cohesionWeight = 1.3;
-    public static double avoidanceWeight = 3;
-    public static double attractionWeight = 2;
-    public static double noiseWeight = 0.5;
-
-    public static boolean flockingMode = true;
-
-    private static final Random rng = ThreadLocalRandom.current();
-    private static Map<Integer, Shape> shapes = new HashMap<>();
+    private static final Map<Integer, Shape> shapes = new ConcurrentHashMap<>();
 
     private int size;
-    private boolean visible = true;
     private boolean dead = false;
     private float hue;
+    private float shade;
     private int life;
 
-    private List<Boid> prey = null;
-    private List<Boid> flock = null;
-    private List<Boid> predators = null;
+    // Index in the world's list of this species, kept up to date as boids are moved around
+    private int slot = -1;
+
+    // Refilled by the world every tick instead of being replaced
+    private final List<Boid> prey = new ArrayList<>();
+    private final List<Boid> flock = new ArrayList<>();
+    private final List<Boid> predators = new ArrayList<>();
 
     private Vector position;
-    private final Vector velocity = new Vector(rng.nextInt(5) - 2.5, rng.nextInt(5) - 2.5);
-    private final Environment environment;
+    private final Vector velocity = new Vector(ThreadLocalRandom.current().nextInt(5) - 2.5, ThreadLocalRandom.current().nextInt(5) - 2.5);
+    private final ObjectWorld world;
 
-    public Boid(double x, double y, int size, Environment e) {
+    public Boid(double x, double y, int size, ObjectWorld world) {
         this.position = new Vector(x, y);
         this.size = size;
         this.life = startingLife;
-        this.environment = e;
-
-        this.hue = flockingMode ? (float)Math.random() : size / 5f;
-    }
-
-    public void run(Graphics2D g, int w, int h) {
-        calculateView();
-        update();
-        wrapAround(w, h);
-        draw(g);
-    }
-
-    private void update() {
-        velocity.add(separation(flock));
-        velocity.add(alignment(flock));
-        velocity.add(cohesion(flock));
-        velocity.add(avoidance(predators));
-        velocity.add(attraction(prey));
-        velocity.add(noise());
-
-        velocity.limit(maxVelocity);
-        position.add(velocity);
+        this.world = world;
+
+        this.hue = flocking() ? (float)Math.random() : size / 5f;
+        this.shade = hue;
+    }
+
+    // Recreates a boid exactly as it was, used when restoring a checkpoint
+    public Boid(double x, double y, double vx, double vy, int size, int life, float hue, float shade, boolean dead,
+                ObjectWorld world) {
+        this(x, y, size, world);
+        this.velocity.x = vx;
+        this.velocity.y = vy;
+        this.life = life;
+        this.hue = hue;
+        this.shade = shade;
+        this.dead = dead;
+    }
+
+    // Makes a boid the world has finished with as good as new, so it can be reused instead of allocated
+    public void reset(double x, double y, int size) {
+        position.x = x;
+        position.y = y;
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        velocity.x = rng.nextInt(5) - 2.5;
+        velocity.y = rng.nextInt(5) - 2.5;
+        this.size = size;
+        this.life = startingLife;
+        this.dead = false;
+        this.hue = flocking() ? (float)Math.random() : size / 5f;
+        this.shade = hue;
 
-        if(life-- == 0 && !flockingMode)
-            dead = true;
+        prey.clear();
+        flock.clear();
+        predators.clear();
     }
 
-    private Vector separation(List<Boid> boids) {
-        if(boids == null)
-            return new Vector();
-
-        Vector steer = new Vector();
-        int count = 0;
+    public void run(Steering steering, int w, int h) {
+        boolean flockingMode = flocking();
+        steering.begin(velocity.x, velocity.y);
 
-        for(Boid b : boids) {
-            if(!b.visible)
-                continue;
-
-            double d = Vector.dist(position, b.position);
-            if(d < desiredSeparation) {
-                Vector diff = Vector.sub(position, b.position);
-                diff.normalize();
-                diff.div(d);
-                steer.add(diff);
-                count++;
-            }
+        // Indexed loops, the iterators of the enhanced for escape once run grows too big to inline them
+        for(int i = 0; i < flock.size(); i++) {
+            Boid b = flock.get(i);
+            if(b != this)
+                steering.flockmate(dx(b, w), dy(b, h), b.velocity.x, b.velocity.y, b.hue);
         }
 
-        if(count > 0)
-            steer.div(count);
-
-        if(steer.mag() > 0) {
-            steer.normalize();
-            steer.mult(maxVelocity);
-            steer.sub(velocity);
-            steer.limit(maxForce);
+        for(int i = 0; i < predators.size(); i++) {
+            Boid b = predators.get(i);
+            steering.predator(dx(b, w), dy(b, h));
         }
 
-        steer.mult(separationWeight);
-        return steer;
-    }
-
-    private Vector alignment(List<Boid> boids) {
-        if(boids == null)
-            return new Vector();
-
-        Vector steer = new Vector();
-        int count = 0;
-
-        for(Boid b : boids) {
-            if(!b.visible)
-                continue;
-
-            double d = Vector.dist(position, b.position);
-            if(d < desiredAlignment) {
-                steer.add(b.velocity);
-                count++;
+        for(int i = 0; i < prey.size(); i++) {
+            Boid b = prey.get(i);
+            if(steering.prey(dx(b, w), dy(b, h)) && !b.dead && !flockingMode) {
+                b.dead = true;
+                world.eaten(b);
+                incrementLife(b);
             }
         }
 
-        if(count > 0) {
-            steer.div(count);
-            steer.normalize();
-            steer.mult(maxVelocity);
-            steer.sub(velocity);
-            steer.limit(maxForce);
-        }
-
-        steer.mult(alignmentWeight);
-        return steer;
-    }
-
-    private Vector cohesion(List<Boid> boids) {
-        if(boids == null)
-            return new Vector();
-
-        Vector target = new Vector();
-        int count = 0;
-
-        for(Boid b : boids) {
-            if(!b.visible)
-                continue;
+        steering.finish();
+        velocity.x = steering.vx();
+        velocity.y = steering.vy();
+        position.add(velocity);
 
-            double d = Vector.dist(position, b.position);
-            if ((d > 0) && (d < desiredCohesion)) {
-                target.add(b.position);
-                count++;
-            }
+        if(life-- == 0 && !flockingMode && !dead) {
+            dead = true;
+            world.starved(this);
         }
 
-        if(count == 0) return target;
-        else target.div(count);
-
-        Vector steer = Vector.sub(target, position);
-        steer.normalize();
-        steer.mult(maxVelocity);
-        steer.sub(velocity);
-        steer.limit(maxForce);
-
-        steer.mult(cohesionWeight);
-        return steer;
+        wrapAround(w, h);
+        shade = flockingMode ? steering.hue(hue) : hue;
     }
 
-    private Vector attraction(List<Boid> boids) {
-        if(boids == null)
-            return new Vector();
-
-        Vector target = new Vector();
-        int count = 0;
-
-        for(Boid b : boids) {
-            if(!b.visible)
-                continue;
-
-            double d = Vector.dist(position, b.position);
-            if ((d > 0) && (d < desiredAttraction)) {
-                if(d < 20 && !b.dead && !flockingMode) {
-                    b.dead = true;
-                    incrementLife(b);
-                }
-
-                target.add(b.position);
-                count++;
-            }
-        }
-
-        if(count == 0) return target;
-        else target.div(count);
-
-        Vector steer = Vector.sub(target, position);
-        steer.normalize();
-        steer.mult(maxVelocity);
-        steer.sub(velocity);
-        steer.limit(maxForce);
-
-        steer.mult(attractionWeight);
-        return steer;
+    // Food has no world, and no mode to follow
+    private boolean flocking() {
+        return world != null && world.getConfig().flockingMode;
     }
 
-    private Vector avoidance(List<Boid> boids) {
-        if(boids == null)
-            return new Vector();
-
-        Vector steer = new Vector();
-        int count = 0;
-
-        for(Boid b : boids) {
-            if(!b.visible)
-                continue;
-
-            double d = Vector.dist(position, b.position);
-            if(d < desiredAvoidance) {
-                Vector diff = Vector.sub(position, b.position);
-                diff.normalize();
-                diff.div(d);
-                steer.add(diff);
-                count++;
-            }
-        }
-
-        if(count > 0)
-            steer.div(count);
-
-        if(steer.mag() > 0) {
-            steer.normalize();
-            steer.mult(maxVelocity);
-            steer.sub(velocity);
-            steer.limit(maxForce);
-        }
-
-        steer.mult(avoidanceWeight);
-        return steer;
+    // Offset to another boid the short way around the world
+    private double dx(Boid b, int width) {
+        return wrap(b.position.x - position.x, width);
     }
 
-    private Vector noise() {
-        Vector steer = new Vector(random() * 2 - 1, random() * 2 - 1);
-        steer.mult(noiseWeight);
-        return steer;
+    private double dy(Boid b, int height) {
+        return wrap(b.position.y - position.y, height);
     }
 
     private void incrementLife(Boid prey) {
         life += Math.max(prey.life, startingLife);
         if(life > startingLife * size) {
-            environment.addBoid(new Boid(position.x, position.y, size, environment));
+            world.birth(position.x, position.y, size);
             life -= startingLife/2 * size;
         }
     }
 
-    private void calculateView() {
-        calculateView(prey);
-        calculateView(flock);
-        calculateView(predators);
-    }
-
-    private void calculateView(List<Boid> boids) {
-        if(boids == null)
-            return;
-
-        for(Boid b : boids) {
-            b.visible = false;
-            if(b.equals(this))
-                continue;
-
-            // Too far away to be seen
-            double d = Vector.dist(position, b.position);
-            if(d > viewRange) continue;
-
-            // Boid in view angle?
-            Vector lineOfSight = Vector.sub(b.position, position);
-            double angleOfSight = Vector.angleBetween(lineOfSight, velocity);
-            if(angleOfSight < viewAngle)
-                b.visible = true;
-        }
-    }
-
     private void wrapAround(int width, int height) {
         if(position.x > width) position.x = 0;
         else if(position.x < 0) position.x = width-1;
@@ -301,19 +159,19 @@ public class Boid {
         else if(position.y < 0) position.y = height-1;
     }
 
-    private void draw(Graphics2D g) {
+    public static void draw(Graphics2D g, double x, double y, double heading, int size, float hue) {
         AffineTransform save = g.getTransform();
-        g.translate(position.x, position.y);
-        g.rotate(velocity.heading() + Math.PI / 2);
-        g.setColor(Color.getHSBColor(flockingMode ? avgHue() : hue, 0.6f, 0.7f));
+        g.translate(x, y);
+        g.rotate(heading + Math.PI / 2);
+        g.setColor(Color.getHSBColor(hue, 0.6f, 0.7f));
         g.fill(getShape(size));
 
         g.setTransform(save);
     }
 
-    private Shape getShape(int x) {
-        if(shapes.containsKey(x))
-            return shapes.get(x);
+    private static Shape getShape(int size) {
+        if(shapes.containsKey(size))
+            return shapes.get(size);
 
         Path2D shape = new Path2D.Double();
         shape.moveTo(0, -size*2);
@@ -321,48 +179,38 @@ public class Boid {
         shape.lineTo(size, size*2);
         shape.closePath();
 
-        shapes.put(x, shape);
+        shapes.put(size, shape);
         return shape;
     }
 
-    private float avgHue() {
-        int visible = 0;
-        float hueSum = 0;
-
-        for(Boid b : flock) {
-            if(b.visible) {
-                visible++;
-                hueSum += b.hue;
-            }
-        }
+    public List<Boid> getPrey() {
+        return prey;
+    }
 
-        return visible == 0 ? hue : hueSum / visible;
+    public List<Boid> getFlock() {
+        return flock;
     }
 
-    public void setPrey(List<Boid> prey) {
-        this.prey = prey;
+    public List<Boid> getPredators() {
+        return predators;
     }
 
-    public void setFlock(List<Boid> flock) {
-        this.flock = flock;
+    public void stopMovement() {
+        velocity.mult(0);
     }
 
-    public void setPredators(List<Boid> predators) {
-        this.predators = predators;
+    public int getSlot() {
+        return slot;
     }
 
-    public void stopMovement() {
-        velocity.mult(0);
+    public void setSlot(int slot) {
+        this.slot = slot;
     }
 
     public int getSize() {
         return size;
     }
 
-    public boolean isVisible() {
-        return visible;
-    }
-
     public boolean isDead() {
         return dead;
     }
@@ -375,6 +223,10 @@ public class Boid {
         return hue;
     }
 
+    public float getShade() {
+        return shade;
+    }
+
     public Vector getPosition() {
         return position;
     }
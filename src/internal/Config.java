@@ -0,0 +1,52 @@
+package internal;
+
+// The tunable settings of one world, shared by everything that simulates it. Several worlds can run
+// side by side in one JVM, each with settings of its own. The window's sliders change them while the
+// simulation thread reads them, so every field is volatile.
+@SuppressWarnings("All")
+public class Config {
+
+    // The order weights() and setWeights use, which is also the order checkpoints store them in
+    public static final String[] weightNames = {"separation", "alignment", "cohesion", "avoidance", "attraction", "noise"};
+
+    public volatile double separationWeight = 2.5;
+    public volatile double alignmentWeight = 1.5;
+    public volatile double cohesionWeight = 1.3;
+    public volatile double avoidanceWeight = 3;
+    public volatile double attractionWeight = 2;
+    public volatile double noiseWeight = 0.5;
+
+    public volatile boolean flockingMode = true;
+
+    // Topological flocking: each boid follows only this many of its nearest visible flockmates, 0 follows them all
+    public volatile int nearestFlockmates = 0;
+
+    // Barnes-Hut flocking: a group of flockmates smaller than this times its distance counts as one, 0 never does.
+    // It only changes how closely flocking is worked out, so like the index it is not saved with checkpoints.
+    public volatile double openingAngle = 0;
+
+    // Verlet lists: neighbours are looked for this much further out and kept until something has moved half as
+    // far, 0 looks for them afresh every tick. Only a matter of speed too, so not saved with checkpoints.
+    public volatile double neighbourSkin = 0;
+
+    public double[] weights() {
+        return new double[] {separationWeight, alignmentWeight, cohesionWeight, avoidanceWeight, attractionWeight, noiseWeight};
+    }
+
+    public void setWeights(double[] weights) {
+        for(int i = 0; i < weights.length && i < weightNames.length; i++)
+            setWeight(weightNames[i], weights[i]);
+    }
+
+    public void setWeight(String name, double weight) {
+        switch(name) {
+            case "separation" : separationWeight = weight; break;
+            case "alignment" : alignmentWeight = weight; break;
+            case "cohesion" : cohesionWeight = weight; break;
+            case "avoidance" : avoidanceWeight = weight; break;
+            case "attraction" : attractionWeight = weight; break;
+            case "noise" : noiseWeight = weight; break;
+            default : throw new IllegalArgumentException("Unknown weight " + name + ", expected one of " + String.join(", ", weightNames));
+        }
+    }
+}
@@ -12,9 +12,22 @@ public class Food extends Boid {
         stopMovement();
     }
 
+    public Food(double x, double y, boolean dead) {
+        super(x, y, 0, 0, 0, startingLife, 0, 0, dead, null);
+    }
+
+    public void reset(double x, double y) {
+        reset(x, y, 0);
+        stopMovement();
+    }
+
     @Override
-    public void run(Graphics2D g, int w, int h) {
+    public void run(Steering steering, int w, int h) {
+        // Food does not move
+    }
+
+    public static void draw(Graphics2D g, double x, double y) {
         g.setColor(Color.green);
-        g.fillOval((int)getPosition().x, (int)getPosition().y, 2, 2);
+        g.fillOval((int)x, (int)y, 2, 2);
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Who eats whom, as a matrix over species with food as species 0. Boids flock with their own species,
+// steer towards any species they eat and away from any species that eats them.
+@SuppressWarnings("All")
+public class FoodWeb {
+
+    // Bits of relation(self, other)
+    public static final int flock = 1;
+    public static final int prey = 2;
+    public static final int predator = 4;
+
+    private final int species;
+    private final boolean[][] eats;
+    private final byte[][] relations;
+
+    // eats[predator][prey] for species 0 (food) to species inclusive, copied
+    public FoodWeb(boolean[][] eats) {
+        this.species = eats.length - 1;
+        this.eats = new boolean[eats.length][];
+        this.relations = new byte[eats.length][eats.length];
+
+        for(int a = 0; a < eats.length; a++) {
+            if(eats[a].length != eats.length)
+                throw new IllegalArgumentException("Food web matrix must be square");
+            if(a == 0 && contains(eats[0]))
+                throw new IllegalArgumentException("Food cannot eat");
+            if(eats[a][a])
+                throw new IllegalArgumentException("Species " + a + " cannot eat itself");
+            this.eats[a] = eats[a].clone();
+        }
+
+        for(int a = 0; a <= species; a++) {
+            for(int b = 0; b <= species; b++) {
+                int relation = a == b && a > 0 ? flock : 0;
+                if(eats[a][b]) relation |= prey;
+                if(eats[b][a]) relation |= predator;
+                relations[a][b] = (byte)relation;
+            }
+        }
+    }
+
+    // The original ecosystem: every species eats the one below it and fears the one above
+    public static FoodWeb chain(int species) {
+        boolean[][] eats = new boolean[species+1][species+1];
+        for(int s = 1; s <= species; s++)
+            eats[s][s-1] = true;
+        return new FoodWeb(eats);
+    }
+
+    // Comma separated predator>prey pairs such as "1>0,2>1,3>1,3>2", where 0 is food
+    public static FoodWeb parse(int species, String spec) {
+        boolean[][] eats = new boolean[species+1][species+1];
+        for(String pair : spec.split(",")) {
+            String[] parts = pair.trim().split(">");
+            if(parts.length != 2)
+                throw new IllegalArgumentException("Expected predator>prey but got " + pair);
+
+            int predator = Integer.parseInt(parts[0].trim()), prey = Integer.parseInt(parts[1].trim());
+            if(predator < 1 || predator > species || prey < 0 || prey > species)
+                throw new IllegalArgumentException("No such species in " + pair + ", there are " + species);
+            eats[predator][prey] = true;
+        }
+
+        return new FoodWeb(eats);
+    }
+
+    private static boolean contains(boolean[] row) {
+        for(boolean b : row)
+            if(b) return true;
+        return false;
+    }
+
+    // Bit set of flock, prey and predator describing what other is to self, both ways round when two species eat each other
+    public int relation(int self, int other) {
+        return relations[self][other];
+    }
+
+    public boolean eats(int predator, int prey) {
+        return eats[predator][prey];
+    }
+
+    public int getSpecies() {
+        return species;
+    }
+
+    @Override
+    public String toString() {
+        List<String> pairs = new ArrayList<>();
+        for(int a = 1; a <= species; a++)
+            for(int b = 0; b <= species; b++)
+                if(eats[a][b]) pairs.add(a + ">" + b);
+        return String.join(",", pairs);
+    }
+}
@@ -0,0 +1,279 @@
+package internal;
+
+import internal.spatial.IntList;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static internal.Boid.*;
+
+// Accumulates every steering rule of one boid in a single pass over its neighbours.
+// Works on squared distances and compares the view angle through its cosine, so the
+// per neighbour work needs no square root, trigonometry or temporary vectors.
+//
+// Neighbours can be given one at a time or as batches of offsets, which VectorSteering
+// runs several lanes at a time when the incubating Vector API is available.
+@SuppressWarnings("All")
+public class Steering {
+
+    // Asks create for VectorSteering, which it only gives when the module is present
+    public static boolean vectorised = false;
+
+    private static final String vectorModule = "jdk.incubator.vector";
+    private static boolean warned = false;
+
+    protected static final double viewRange2 = viewRange * viewRange;
+    protected static final double cosViewAngle = Math.cos(viewAngle);
+    protected static final double cosViewAngle2 = cosViewAngle * cosViewAngle;
+    protected static final double separation2 = desiredSeparation * desiredSeparation;
+    protected static final double alignment2 = desiredAlignment * desiredAlignment;
+    protected static final double cohesion2 = desiredCohesion * desiredCohesion;
+    protected static final double avoidance2 = desiredAvoidance * desiredAvoidance;
+    protected static final double attraction2 = desiredAttraction * desiredAttraction;
+    protected static final double eatRange2 = eatRange * eatRange;
+
+    protected final Config config;
+
+    protected double vx;
+    protected double vy;
+    protected double speed2;
+
+    protected double separationX, separationY;
+    protected int separationCount;
+    protected double alignmentX, alignmentY;
+    protected int alignmentCount;
+    protected double cohesionX, cohesionY;
+    protected int cohesionCount;
+    protected double avoidanceX, avoidanceY;
+    protected int avoidanceCount;
+    protected double attractionX, attractionY;
+    protected int attractionCount;
+    protected float hueSum;
+    protected int hueCount;
+
+    // Weights are read from the given settings on every finish, so changes to them apply straight away
+    public Steering(Config config) {
+        this.config = config;
+    }
+
+    // The class is looked up by name so nothing links against the module unless it is there
+    public static Steering create(Config config) {
+        if(!vectorised)
+            return new Steering(config);
+
+        if(ModuleLayer.boot().findModule(vectorModule).isPresent()) {
+            try {
+                return (Steering)Class.forName("internal.VectorSteering").getDeclaredConstructor(Config.class).newInstance(config);
+            }catch(ReflectiveOperationException | LinkageError e) {
+                warn("Vector steering failed to load (" + e + ")");
+            }
+        }
+        else warn("Run with --add-modules " + vectorModule + " for vector steering");
+
+        return new Steering(config);
+    }
+
+    private static synchronized void warn(String message) {
+        if(warned) return;
+        warned = true;
+        System.err.println(message + ", steering stays scalar");
+    }
+
+    public void begin(double vx, double vy) {
+        this.vx = vx;
+        this.vy = vy;
+        this.speed2 = vx*vx + vy*vy;
+
+        separationX = separationY = 0;
+        alignmentX = alignmentY = 0;
+        cohesionX = cohesionY = 0;
+        avoidanceX = avoidanceY = 0;
+        attractionX = attractionY = 0;
+        separationCount = alignmentCount = cohesionCount = avoidanceCount = attractionCount = 0;
+        hueSum = 0;
+        hueCount = 0;
+    }
+
+    // Offsets point from this boid to the neighbour
+    public void flockmate(double dx, double dy, double nvx, double nvy, float hue) {
+        double d2 = dx*dx + dy*dy;
+        if(!visible(dx, dy, d2))
+            return;
+
+        hueSum += hue;
+        hueCount++;
+
+        if(d2 < separation2) {
+            separationX -= dx / d2;
+            separationY -= dy / d2;
+            separationCount++;
+        }
+
+        if(d2 < alignment2) {
+            alignmentX += nvx;
+            alignmentY += nvy;
+            alignmentCount++;
+        }
+
+        if(d2 < cohesion2) {
+            cohesionX += dx;
+            cohesionY += dy;
+            cohesionCount++;
+        }
+    }
+
+    // A group of flockmates taken as one, given as sums of their offsets, velocities and hues. The group is seen,
+    // and kept away from, as a whole from where its centre is, so it must lie wholly either side of the separation
+    // distance and wholly within the alignment and cohesion distances.
+    public void flockGroup(int count, double dx, double dy, double nvx, double nvy, double hue) {
+        double mx = dx / count, my = dy / count;
+        double d2 = mx*mx + my*my;
+        if(!visible(mx, my, d2))
+            return;
+
+        hueSum += hue;
+        hueCount += count;
+
+        if(d2 < separation2) {
+            separationX -= dx / d2;
+            separationY -= dy / d2;
+            separationCount += count;
+        }
+
+        if(d2 < alignment2) {
+            alignmentX += nvx;
+            alignmentY += nvy;
+            alignmentCount += count;
+        }
+
+        if(d2 < cohesion2) {
+            cohesionX += dx;
+            cohesionY += dy;
+            cohesionCount += count;
+        }
+    }
+
+    public void predator(double dx, double dy) {
+        double d2 = dx*dx + dy*dy;
+        if(!visible(dx, dy, d2) || d2 >= avoidance2)
+            return;
+
+        avoidanceX -= dx / d2;
+        avoidanceY -= dy / d2;
+        avoidanceCount++;
+    }
+
+    // Returns true when the prey is close enough to be eaten
+    public boolean prey(double dx, double dy) {
+        double d2 = dx*dx + dy*dy;
+        if(!visible(dx, dy, d2) || d2 >= attraction2)
+            return false;
+
+        attractionX += dx;
+        attractionY += dy;
+        attractionCount++;
+        return d2 < eatRange2;
+    }
+
+    // The first n entries of every array are one flockmate each
+    public void flock(double[] dx, double[] dy, double[] nvx, double[] nvy, double[] hue, int n) {
+        for(int i = 0; i < n; i++)
+            flockmate(dx[i], dy[i], nvx[i], nvy[i], (float)hue[i]);
+    }
+
+    public void predators(double[] dx, double[] dy, int n) {
+        for(int i = 0; i < n; i++)
+            predator(dx[i], dy[i]);
+    }
+
+    // Adds the index of every prey close enough to be eaten to eatable, in increasing order
+    public void prey(double[] dx, double[] dy, int n, IntList eatable) {
+        for(int i = 0; i < n; i++)
+            if(prey(dx[i], dy[i])) eatable.add(i);
+    }
+
+    // Whether a boid moving at the given velocity sees a neighbour at the given offset, the same test the rules use
+    public static boolean sees(double dx, double dy, double vx, double vy) {
+        double d2 = dx*dx + dy*dy, speed2 = vx*vx + vy*vy;
+        if(d2 == 0 || d2 > viewRange2 || speed2 == 0)
+            return false;
+
+        double dot = dx*vx + dy*vy;
+        return dot >= 0 || dot*dot < cosViewAngle2 * d2 * speed2;
+    }
+
+    // Inside the view range and within the view angle either side of the heading
+    private boolean visible(double dx, double dy, double d2) {
+        if(d2 == 0 || d2 > viewRange2 || speed2 == 0)
+            return false;
+
+        // cos(angle) > cos(viewAngle), squared to avoid the root; the threshold is negative
+        double dot = dx*vx + dy*vy;
+        return dot >= 0 || dot*dot < cosViewAngle2 * d2 * speed2;
+    }
+
+    // Applies the rules in the order Boid always has, each one seeing the velocity left by the previous
+    public void finish() {
+        if(separationCount > 0)
+            steer(separationX / separationCount, separationY / separationCount, config.separationWeight, false);
+        if(alignmentCount > 0)
+            steer(alignmentX / alignmentCount, alignmentY / alignmentCount, config.alignmentWeight, true);
+        if(cohesionCount > 0)
+            steer(cohesionX / cohesionCount, cohesionY / cohesionCount, config.cohesionWeight, true);
+        if(avoidanceCount > 0)
+            steer(avoidanceX / avoidanceCount, avoidanceY / avoidanceCount, config.avoidanceWeight, false);
+        if(attractionCount > 0)
+            steer(attractionX / attractionCount, attractionY / attractionCount, config.attractionWeight, true);
+
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        double noise = config.noiseWeight;
+        vx += (rng.nextDouble() * 2 - 1) * noise;
+        vy += (rng.nextDouble() * 2 - 1) * noise;
+
+        double mag2 = vx*vx + vy*vy;
+        if(mag2 > maxVelocity * maxVelocity) {
+            double scale = maxVelocity / Math.sqrt(mag2);
+            vx *= scale;
+            vy *= scale;
+        }
+    }
+
+    // Reynolds steering towards a desired direction, limited and weighted.
+    // A zero direction only brakes, unless the rule skips it entirely like separation does.
+    private void steer(double dx, double dy, double weight, boolean brake) {
+        double mag = Math.sqrt(dx*dx + dy*dy);
+        if(mag == 0 && !brake)
+            return;
+
+        if(mag != 0) {
+            dx = dx / mag * maxVelocity - vx;
+            dy = dy / mag * maxVelocity - vy;
+        }
+        else {
+            dx = -vx;
+            dy = -vy;
+        }
+
+        double force2 = dx*dx + dy*dy;
+        if(force2 > maxForce * maxForce) {
+            double scale = maxForce / Math.sqrt(force2);
+            dx *= scale;
+            dy *= scale;
+        }
+
+        vx += dx * weight;
+        vy += dy * weight;
+    }
+
+    public double vx() {
+        return vx;
+    }
+
+    public double vy() {
+        return vy;
+    }
+
+    // Average hue of the visible flock, or the given hue when nobody is visible
+    public float hue(float own) {
+        return hueCount == 0 ? own : hueSum / hueCount;
+    }
+}
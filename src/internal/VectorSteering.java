@@ -0,0 +1,122 @@
+package internal;
+
+import internal.spatial.IntList;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// The batch steering rules with one neighbour per vector lane. The range and view angle tests become lane
+// masks and every rule is a masked add into a vector accumulator, reduced once at the end of the batch,
+// so a dense flock runs without a branch per neighbour. Tails shorter than a vector go through the scalar rules.
+//
+// Sums come out in a different order than the scalar rules add them, so results agree to rounding only.
+// Only loaded by Steering.create, once the jdk.incubator.vector module is known to be present.
+@SuppressWarnings("All")
+class VectorSteering extends Steering {
+
+    private static final VectorSpecies<Double> lanes = DoubleVector.SPECIES_PREFERRED;
+
+    VectorSteering(Config config) {
+        super(config);
+    }
+
+    @Override
+    public void flock(double[] dx, double[] dy, double[] nvx, double[] nvy, double[] hue, int n) {
+        int bound = speed2 == 0 ? 0 : lanes.loopBound(n);
+        DoubleVector separationX = DoubleVector.zero(lanes), separationY = DoubleVector.zero(lanes);
+        DoubleVector alignmentX = DoubleVector.zero(lanes), alignmentY = DoubleVector.zero(lanes);
+        DoubleVector cohesionX = DoubleVector.zero(lanes), cohesionY = DoubleVector.zero(lanes);
+        DoubleVector hues = DoubleVector.zero(lanes);
+
+        for(int i = 0; i < bound; i += lanes.length()) {
+            DoubleVector x = DoubleVector.fromArray(lanes, dx, i), y = DoubleVector.fromArray(lanes, dy, i);
+            DoubleVector d2 = x.mul(x).add(y.mul(y));
+            VectorMask<Double> visible = visible(x, y, d2);
+
+            hues = hues.add(DoubleVector.fromArray(lanes, hue, i), visible);
+            hueCount += visible.trueCount();
+
+            VectorMask<Double> separation = visible.and(d2.lt(separation2));
+            separationX = separationX.sub(x.div(d2), separation);
+            separationY = separationY.sub(y.div(d2), separation);
+            separationCount += separation.trueCount();
+
+            VectorMask<Double> alignment = visible.and(d2.lt(alignment2));
+            alignmentX = alignmentX.add(DoubleVector.fromArray(lanes, nvx, i), alignment);
+            alignmentY = alignmentY.add(DoubleVector.fromArray(lanes, nvy, i), alignment);
+            alignmentCount += alignment.trueCount();
+
+            VectorMask<Double> cohesion = visible.and(d2.lt(cohesion2));
+            cohesionX = cohesionX.add(x, cohesion);
+            cohesionY = cohesionY.add(y, cohesion);
+            cohesionCount += cohesion.trueCount();
+        }
+
+        this.separationX += separationX.reduceLanes(VectorOperators.ADD);
+        this.separationY += separationY.reduceLanes(VectorOperators.ADD);
+        this.alignmentX += alignmentX.reduceLanes(VectorOperators.ADD);
+        this.alignmentY += alignmentY.reduceLanes(VectorOperators.ADD);
+        this.cohesionX += cohesionX.reduceLanes(VectorOperators.ADD);
+        this.cohesionY += cohesionY.reduceLanes(VectorOperators.ADD);
+        this.hueSum += (float)hues.reduceLanes(VectorOperators.ADD);
+
+        for(int i = bound; i < n; i++)
+            flockmate(dx[i], dy[i], nvx[i], nvy[i], (float)hue[i]);
+    }
+
+    @Override
+    public void predators(double[] dx, double[] dy, int n) {
+        int bound = speed2 == 0 ? 0 : lanes.loopBound(n);
+        DoubleVector avoidanceX = DoubleVector.zero(lanes), avoidanceY = DoubleVector.zero(lanes);
+
+        for(int i = 0; i < bound; i += lanes.length()) {
+            DoubleVector x = DoubleVector.fromArray(lanes, dx, i), y = DoubleVector.fromArray(lanes, dy, i);
+            DoubleVector d2 = x.mul(x).add(y.mul(y));
+            VectorMask<Double> avoidance = visible(x, y, d2).and(d2.lt(avoidance2));
+            avoidanceX = avoidanceX.sub(x.div(d2), avoidance);
+            avoidanceY = avoidanceY.sub(y.div(d2), avoidance);
+            avoidanceCount += avoidance.trueCount();
+        }
+
+        this.avoidanceX += avoidanceX.reduceLanes(VectorOperators.ADD);
+        this.avoidanceY += avoidanceY.reduceLanes(VectorOperators.ADD);
+
+        for(int i = bound; i < n; i++)
+            predator(dx[i], dy[i]);
+    }
+
+    @Override
+    public void prey(double[] dx, double[] dy, int n, IntList eatable) {
+        int bound = speed2 == 0 ? 0 : lanes.loopBound(n);
+        DoubleVector attractionX = DoubleVector.zero(lanes), attractionY = DoubleVector.zero(lanes);
+
+        for(int i = 0; i < bound; i += lanes.length()) {
+            DoubleVector x = DoubleVector.fromArray(lanes, dx, i), y = DoubleVector.fromArray(lanes, dy, i);
+            DoubleVector d2 = x.mul(x).add(y.mul(y));
+            VectorMask<Double> attraction = visible(x, y, d2).and(d2.lt(attraction2));
+            attractionX = attractionX.add(x, attraction);
+            attractionY = attractionY.add(y, attraction);
+            attractionCount += attraction.trueCount();
+
+            // Catches are rare, so their lanes are walked bit by bit
+            for(long eat = attraction.and(d2.lt(eatRange2)).toLong(); eat != 0; eat &= eat - 1)
+                eatable.add(i + Long.numberOfTrailingZeros(eat));
+        }
+
+        this.attractionX += attractionX.reduceLanes(VectorOperators.ADD);
+        this.attractionY += attractionY.reduceLanes(VectorOperators.ADD);
+
+        for(int i = bound; i < n; i++)
+            if(prey(dx[i], dy[i])) eatable.add(i);
+    }
+
+    // Same test as the scalar visible, lane by lane
+    private VectorMask<Double> visible(DoubleVector x, DoubleVector y, DoubleVector d2) {
+        VectorMask<Double> range = d2.compare(VectorOperators.GT, 0).and(d2.compare(VectorOperators.LE, viewRange2));
+        DoubleVector dot = x.mul(vx).add(y.mul(vy));
+        VectorMask<Double> angle = dot.compare(VectorOperators.GE, 0)
+            .or(dot.mul(dot).lt(d2.mul(cosViewAngle2 * speed2)));
+        return range.and(angle);
+    }
+}
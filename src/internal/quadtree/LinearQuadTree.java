@@ -0,0 +1,357 @@
+package internal.quadtree;
+
+import internal.spatial.IdVisitor;
+import internal.spatial.IntList;
+import internal.spatial.KNearest;
+import internal.spatial.Motions;
+import internal.spatial.NearestFilter;
+import internal.spatial.Positions;
+import internal.spatial.SumVisitor;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+// A quadtree without node objects. Every build sorts the ids by the Morton (Z-order) key of the cell they are in at
+// the deepest level, so the ids of any quadrant are one contiguous run of the sorted array. The nodes are then laid
+// out in flat arrays in depth-first order, each with its run and the index just past its subtree in place of child
+// pointers. A node is only split while it holds more than a bucket of ids and is above the maximum depth, so any
+// number of entities at one point end up in a single leaf at that depth.
+//
+// Queries are the same as those of QuadTree, and like them can run on several threads at once.
+@SuppressWarnings("All")
+public class LinearQuadTree {
+
+    // Count, position, velocity and hue sums of each size, one after another
+    private static final int fields = 6;
+
+    private final int bucket;
+    private final int maxDepth;
+
+    private Positions positions = null;
+    private double x0;
+    private double y0;
+    private double width;
+    private double height;
+
+    // Ids sorted by key, each the two cell coordinates at the maximum depth with their bits interleaved
+    private int count = 0;
+    private long[] sorted = new long[16];
+    private int[] keys = new int[16];
+    private int[] ids = new int[16];
+
+    // Node i holds ids[start[i]] until ids[end[i]], its subtree ends just before node skip[i], so it is a leaf
+    // if skip[i] is i+1 and its children are i+1, skip[i+1] and so on otherwise
+    private int nodes = 0;
+    private int[] start = new int[16];
+    private int[] end = new int[16];
+    private int[] skip = new int[16];
+    private int[] parent = new int[16];
+    private int[] depth = new int[16];
+    private double[] nodeX = new double[16];
+    private double[] nodeY = new double[16];
+
+    // Sums of every node by entity size, sizes by fields apart, see sum
+    private double[] sums = new double[0];
+    private int sizes = 0;
+    private Motions motions = null;
+
+    public LinearQuadTree(int bucket, int maxDepth) {
+        if(bucket < 1)
+            throw new IllegalArgumentException("Leaf buckets must hold at least one entity");
+        if(maxDepth < 0 || maxDepth > 15)
+            throw new IllegalArgumentException("Depth must be between 0 and 15, got " + maxDepth);
+
+        this.bucket = bucket;
+        this.maxDepth = maxDepth;
+    }
+
+    // Replaces the tree with one over the given ids in the area, reusing every array
+    public void build(Positions positions, IntList ids, double x, double y, double w, double h) {
+        this.positions = positions;
+        this.x0 = x;
+        this.y0 = y;
+        this.width = w;
+        this.height = h;
+        this.sizes = 0;
+
+        count = ids.size();
+        if(sorted.length < count) {
+            int length = Math.max(count, sorted.length * 2);
+            sorted = new long[length];
+            keys = new int[length];
+            this.ids = new int[length];
+        }
+
+        // Ids go in the low half so equal keys stay in id order
+        int cells = 1 << maxDepth;
+        for(int i = 0; i < count; i++) {
+            int id = ids.get(i);
+            int cx = cell(positions.x(id) - x, w, cells), cy = cell(positions.y(id) - y, h, cells);
+            sorted[i] = (long)interleave(cx, cy) << 32 | id;
+        }
+        Arrays.sort(sorted, 0, count);
+
+        for(int i = 0; i < count; i++) {
+            keys[i] = (int)(sorted[i] >>> 32);
+            this.ids[i] = (int)sorted[i];
+        }
+
+        nodes = 0;
+        add(-1, 0, 0, 0, count);
+    }
+
+    private static int cell(double offset, double size, int cells) {
+        return Math.min(cells - 1, Math.max(0, (int)(offset / size * cells)));
+    }
+
+    // Adds the node of the given key at the given depth over ids lo until hi, then its children in key order
+    private void add(int up, int level, int key, int lo, int hi) {
+        int i = nodes++;
+        if(i == start.length) grow();
+
+        int shift = maxDepth - level;
+        start[i] = lo;
+        end[i] = hi;
+        parent[i] = up;
+        depth[i] = level;
+        nodeX[i] = x0 + width * (compact(key) << shift) / (1 << maxDepth);
+        nodeY[i] = y0 + height * (compact(key >>> 1) << shift) / (1 << maxDepth);
+
+        if(hi - lo > bucket && level < maxDepth) {
+            int childShift = 2 * (shift - 1);
+            for(int q = 0; q < 4; q++) {
+                int child = key << 2 | q;
+                int split = q == 3 ? hi : lowerBound(lo, hi, (child + 1) << childShift);
+                if(split > lo) add(i, level + 1, child, lo, split);
+                lo = split;
+            }
+        }
+
+        skip[i] = nodes;
+    }
+
+    // First index in lo until hi with a key of at least the given one
+    private int lowerBound(int lo, int hi, int key) {
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(keys[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void grow() {
+        int length = start.length * 2;
+        start = Arrays.copyOf(start, length);
+        end = Arrays.copyOf(end, length);
+        skip = Arrays.copyOf(skip, length);
+        parent = Arrays.copyOf(parent, length);
+        depth = Arrays.copyOf(depth, length);
+        nodeX = Arrays.copyOf(nodeX, length);
+        nodeY = Arrays.copyOf(nodeY, length);
+    }
+
+    // Spreads the bits of x over the even bits and those of y over the odd ones
+    private static int interleave(int x, int y) {
+        return spread(x) | spread(y) << 1;
+    }
+
+    private static int spread(int v) {
+        v &= 0xffff;
+        v = (v | v << 8) & 0x00ff00ff;
+        v = (v | v << 4) & 0x0f0f0f0f;
+        v = (v | v << 2) & 0x33333333;
+        v = (v | v << 1) & 0x55555555;
+        return v;
+    }
+
+    // The even bits of v packed together, undoing spread
+    private static int compact(int v) {
+        v &= 0x55555555;
+        v = (v | v >>> 1) & 0x33333333;
+        v = (v | v >>> 2) & 0x0f0f0f0f;
+        v = (v | v >>> 4) & 0x00ff00ff;
+        v = (v | v >>> 8) & 0x0000ffff;
+        return v;
+    }
+
+    private double nodeWidth(int i) {
+        return width / (1 << depth[i]);
+    }
+
+    private double nodeHeight(int i) {
+        return height / (1 << depth[i]);
+    }
+
+    private boolean isLeaf(int i) {
+        return skip[i] == i + 1;
+    }
+
+    public void query(Vector pos, Vector size, IdVisitor visitor) {
+        query(pos.x, pos.y, size.x, size.y, visitor);
+    }
+
+    // Streams every id inside the area to the visitor, taking a node that lies wholly inside as its whole run
+    public void query(double x, double y, double w, double h, IdVisitor visitor) {
+        for(int i = 0; i < nodes;) {
+            double nx = nodeX[i], ny = nodeY[i], nw = nodeWidth(i), nh = nodeHeight(i);
+            if(nx > x + w || nx + nw < x || ny > y + h || ny + nh < y) {
+                i = skip[i];
+                continue;
+            }
+
+            if(nx > x && nx + nw <= x + w && ny > y && ny + nh <= y + h) {
+                for(int k = start[i]; k < end[i]; k++)
+                    visitor.visit(ids[k]);
+                i = skip[i];
+                continue;
+            }
+
+            if(isLeaf(i)) {
+                for(int k = start[i]; k < end[i]; k++) {
+                    double px = positions.x(ids[k]), py = positions.y(ids[k]);
+                    if(px > x && px <= x+w && py > y && py <= y+h)
+                        visitor.visit(ids[k]);
+                }
+            }
+            i++;
+        }
+    }
+
+    // Offers the ids within range of the point to the heap, the quadrant holding the point first and the
+    // opposite one last, skipping every node further away than the farthest id the heap keeps
+    public void nearest(double x, double y, double range2, NearestFilter filter, KNearest out) {
+        if(nodes > 0)
+            nearest(0, x, y, range2, filter, out);
+    }
+
+    private void nearest(int i, double x, double y, double range2, NearestFilter filter, KNearest out) {
+        double nw = nodeWidth(i), nh = nodeHeight(i);
+        double nx = Math.max(0, Math.max(nodeX[i] - x, x - nodeX[i] - nw));
+        double ny = Math.max(0, Math.max(nodeY[i] - y, y - nodeY[i] - nh));
+        if(nx*nx + ny*ny > Math.min(range2, out.bound()))
+            return;
+
+        if(isLeaf(i)) {
+            for(int k = start[i]; k < end[i]; k++) {
+                int id = ids[k];
+                double dx = positions.x(id) - x, dy = positions.y(id) - y;
+                double d2 = dx*dx + dy*dy;
+                if(d2 <= range2 && d2 < out.bound() && filter.accept(id, dx, dy))
+                    out.offer(id, d2);
+            }
+            return;
+        }
+
+        // Children are only there when not empty, each knows its quadrant from the last two bits of its key
+        int first = (x > nodeX[i] + nw/2 ? 1 : 0) + (y > nodeY[i] + nh/2 ? 2 : 0);
+        for(int order = 0; order < 4; order++) {
+            for(int c = i + 1; c < skip[i]; c = skip[c]) {
+                if(quadrant(c) == (first ^ order)) {
+                    nearest(c, x, y, range2, filter, out);
+                    break;
+                }
+            }
+        }
+    }
+
+    private int quadrant(int i) {
+        double nx = nodeX[i] - nodeX[parent[i]], ny = nodeY[i] - nodeY[parent[i]];
+        return (nx > 0 ? 1 : 0) + (ny > 0 ? 2 : 0);
+    }
+
+    // Fills in the sums of every node, each leaf from its run and every other node from its children, which
+    // come after it. Must be called again after the next build.
+    public void sum(Motions motions) {
+        this.motions = motions;
+        sizes = 0;
+        for(int k = 0; k < count; k++)
+            sizes = Math.max(sizes, motions.size(ids[k]) + 1);
+
+        int stride = sizes * fields;
+        if(sums.length < nodes * stride) sums = new double[Math.max(nodes * stride, sums.length * 2)];
+        else Arrays.fill(sums, 0, nodes * stride, 0);
+
+        for(int i = nodes - 1; i >= 0; i--) {
+            int at = i * stride;
+            if(isLeaf(i)) {
+                for(int k = start[i]; k < end[i]; k++) {
+                    int id = ids[k];
+                    int s = at + motions.size(id) * fields;
+                    sums[s]++;
+                    sums[s+1] += motions.x(id);
+                    sums[s+2] += motions.y(id);
+                    sums[s+3] += motions.vx(id);
+                    sums[s+4] += motions.vy(id);
+                    sums[s+5] += motions.hue(id);
+                }
+            }
+
+            if(parent[i] >= 0) {
+                int up = parent[i] * stride;
+                for(int f = 0; f < stride; f++)
+                    sums[up + f] += sums[at + f];
+            }
+        }
+    }
+
+    // Barnes-Hut over the entities of one size, the same as QuadTree.querySums
+    public void querySums(double x, double y, double shiftX, double shiftY, double range2, double near2, double theta2, int entitySize,
+                          SumVisitor visitor, IdVisitor out) {
+        if(entitySize >= sizes)
+            return;
+
+        int stride = sizes * fields;
+        for(int i = 0; i < nodes;) {
+            double w = nodeWidth(i), h = nodeHeight(i);
+            double nx = Math.max(0, Math.max(nodeX[i] - x, x - nodeX[i] - w));
+            double ny = Math.max(0, Math.max(nodeY[i] - y, y - nodeY[i] - h));
+            double n2 = nx*nx + ny*ny;
+            int at = i * stride + entitySize * fields;
+            if(n2 > range2 || sums[at] == 0) {
+                i = skip[i];
+                continue;
+            }
+
+            double fx = Math.max(Math.abs(x - nodeX[i]), Math.abs(x - nodeX[i] - w));
+            double fy = Math.max(Math.abs(y - nodeY[i]), Math.abs(y - nodeY[i] - h));
+            double f2 = fx*fx + fy*fy;
+            if(n2 > 0 && f2 <= range2 && (n2 >= near2 || f2 < near2)) {
+                double count = sums[at];
+                double cx = sums[at+1] - count * x, cy = sums[at+2] - count * y;
+                double extent = Math.max(w, h) * count;
+                if(extent*extent < theta2 * (cx*cx + cy*cy)) {
+                    visitor.visit((int)count, sums[at+1] - count * shiftX, sums[at+2] - count * shiftY, sums[at+3], sums[at+4], sums[at+5]);
+                    i = skip[i];
+                    continue;
+                }
+            }
+
+            if(isLeaf(i)) {
+                for(int k = start[i]; k < end[i]; k++) {
+                    int id = ids[k];
+                    double dx = positions.x(id) - x, dy = positions.y(id) - y;
+                    if(motions.size(id) == entitySize && dx*dx + dy*dy <= range2)
+                        out.visit(id);
+                }
+            }
+            i++;
+        }
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public void outline(Path2D path) {
+        for(int i = 0; i < nodes; i++)
+            path.append(new Rectangle2D.Double(nodeX[i], nodeY[i], nodeWidth(i), nodeHeight(i)), false);
+    }
+
+    public void draw(Graphics2D g) {
+        for(int i = 0; i < nodes; i++)
+            g.drawRect((int)nodeX[i], (int)nodeY[i], (int)nodeWidth(i), (int)nodeHeight(i));
+    }
+}
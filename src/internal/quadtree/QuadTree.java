@@ -1,90 +1,271 @@
 package internal.quadtree;
 
-import internal.Boid;
+import internal.spatial.IdVisitor;
+import internal.spatial.KNearest;
+import internal.spatial.Motions;
+import internal.spatial.NearestFilter;
+import internal.spatial.Positions;
+import internal.spatial.SumVisitor;
 
 import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 @SuppressWarnings("All")
 public class QuadTree {
 
-    private final Vector position;
-    private final Vector size;
+    // Count, position, velocity and hue sums of each size, one after another
+    private static final int fields = 6;
+
+    private final Positions positions;
+    private final Vector position = new Vector();
+    private final Vector size = new Vector();
 
     private int index = 0;
-    private final Boid[] boids;
+    private final int[] ids;
     private final QuadTree[] children = new QuadTree[4];
 
-    public QuadTree(double x, double y, double w, double h, int capacity) {
-        this.position = new Vector(x, y);
-        this.size = new Vector(w, h);
-        this.boids = new Boid[capacity];
+    // Sums over the whole subtree by entity size, for sizes below sizes, see sum
+    private double[] sums = new double[0];
+    private int sizes = 0;
+
+    // Nodes of the whole tree, handed out again after the root is cleared
+    private final Pool pool;
+
+    public QuadTree(Positions positions, double x, double y, double w, double h, int capacity) {
+        this(positions, new Pool(), capacity);
+        pool.root = this;
+        setBounds(x, y, w, h);
     }
 
-    public void insert(Boid boid) {
-        if(index < boids.length) {
-            boids[index++] = boid;
+    private QuadTree(Positions positions, Pool pool, int capacity) {
+        this.positions = positions;
+        this.pool = pool;
+        this.ids = new int[capacity];
+    }
+
+    public void insert(int id) {
+        if(index < ids.length) {
+            ids[index++] = id;
             return;
         }
 
         if(children[0] == null) // Divide tree if not already divided
-            subDivide(position.x, position.y, size.x, size.y, boids.length);
+            subDivide(position.x, position.y, size.x, size.y);
 
+        double x = positions.x(id), y = positions.y(id);
         for(QuadTree child : children) {
-            if(pointInBounds(boid.getPosition(), child.position, child.size)) {
-                child.insert(boid);
+            if(pointInBounds(x, y, child.position, child.size)) {
+                child.insert(id);
                 break;
             }
         }
     }
 
-    public List<Boid> query(Vector pos, Vector size) {
-        if(!intersects(pos, size, this.position, this.size))
-            return Collections.emptyList();
+    // Streams every id inside the area to the visitor without allocating
+    public void query(Vector pos, Vector size, IdVisitor visitor) {
+        query(pos.x, pos.y, size.x, size.y, visitor);
+    }
+
+    // Same as above without any shared scratch vectors, so several threads can query at once
+    public void query(double x, double y, double w, double h, IdVisitor visitor) {
+        if(!intersects(x, y, w, h))
+            return;
 
-        List<Boid> query = new ArrayList<>();
-        for(Boid b : boids) {
-            if(b != null && pointInBounds(b.getPosition(), pos, size))
-                query.add(b);
+        for(int i = 0; i < index; i++) {
+            double px = positions.x(ids[i]), py = positions.y(ids[i]);
+            if(px > x && px <= x+w && py > y && py <= y+h)
+                visitor.visit(ids[i]);
         }
 
-        if(children[0] != null) { // If divided add children
+        if(children[0] != null) { // If divided visit children
             for(QuadTree child : children)
-                query.addAll(child.query(pos, size));
+                child.query(x, y, w, h, visitor);
+        }
+    }
+
+    // Offers the ids within range of the point to the heap, the quadrant holding the point first and the
+    // opposite one last, skipping every node further away than the farthest id the heap keeps
+    public void nearest(double x, double y, double range2, NearestFilter filter, KNearest out) {
+        double nx = Math.max(0, Math.max(position.x - x, x - position.x - size.x));
+        double ny = Math.max(0, Math.max(position.y - y, y - position.y - size.y));
+        if(nx*nx + ny*ny > Math.min(range2, out.bound()))
+            return;
+
+        for(int i = 0; i < index; i++) {
+            int id = ids[i];
+            double dx = positions.x(id) - x, dy = positions.y(id) - y;
+            double d2 = dx*dx + dy*dy;
+            if(d2 <= range2 && d2 < out.bound() && filter.accept(id, dx, dy))
+                out.offer(id, d2);
+        }
+
+        if(children[0] == null)
+            return;
+
+        // Children are laid out left to right, then top to bottom
+        int first = (x > position.x + size.x/2 ? 1 : 0) + (y > position.y + size.y/2 ? 2 : 0);
+        children[first].nearest(x, y, range2, filter, out);
+        children[first ^ 1].nearest(x, y, range2, filter, out);
+        children[first ^ 2].nearest(x, y, range2, filter, out);
+        children[first ^ 3].nearest(x, y, range2, filter, out);
+    }
+
+    // Fills in the sums of every node, children first. Must be called again after the tree changes.
+    public void sum(Motions motions) {
+        pool.motions = motions;
+        sizes = 0;
+        for(int i = 0; i < index; i++)
+            sizes = Math.max(sizes, motions.size(ids[i]) + 1);
+
+        if(children[0] != null) {
+            for(QuadTree child : children) {
+                child.sum(motions);
+                sizes = Math.max(sizes, child.sizes);
+            }
         }
 
-        return query;
+        int length = sizes * fields;
+        if(sums.length < length) sums = new double[length];
+        else Arrays.fill(sums, 0, length, 0);
+
+        for(int i = 0; i < index; i++) {
+            int id = ids[i];
+            int at = motions.size(id) * fields;
+            sums[at]++;
+            sums[at+1] += motions.x(id);
+            sums[at+2] += motions.y(id);
+            sums[at+3] += motions.vx(id);
+            sums[at+4] += motions.vy(id);
+            sums[at+5] += motions.hue(id);
+        }
+
+        if(children[0] != null) {
+            for(QuadTree child : children) {
+                for(int f = 0; f < child.sizes * fields; f++)
+                    sums[f] += child.sums[f];
+            }
+        }
+    }
+
+    // Barnes-Hut over the entities of one size: a node wholly within range of the point, wholly either side of
+    // near and not holding the point goes to the visitor as one group once it is smaller than theta times the
+    // distance to its centre of mass, anything else is visited id by id. Distances are all squared. Groups are handed
+    // out moved back by the shift per entity, so a query around a point shifted over an edge of the world sums up
+    // positions as seen from the point itself.
+    public void querySums(double x, double y, double shiftX, double shiftY, double range2, double near2, double theta2, int entitySize,
+                          SumVisitor visitor, IdVisitor out) {
+        double nx = Math.max(0, Math.max(position.x - x, x - position.x - size.x));
+        double ny = Math.max(0, Math.max(position.y - y, y - position.y - size.y));
+        double n2 = nx*nx + ny*ny;
+        if(n2 > range2 || entitySize >= sizes)
+            return;
+
+        int at = entitySize * fields;
+        if(sums[at] == 0)
+            return;
+
+        double fx = Math.max(Math.abs(x - position.x), Math.abs(x - position.x - size.x));
+        double fy = Math.max(Math.abs(y - position.y), Math.abs(y - position.y - size.y));
+        double f2 = fx*fx + fy*fy;
+        if(n2 > 0 && f2 <= range2 && (n2 >= near2 || f2 < near2)) {
+            // extent < theta * distance to the centre of mass, multiplied through by the count
+            double count = sums[at];
+            double cx = sums[at+1] - count * x, cy = sums[at+2] - count * y;
+            double extent = Math.max(size.x, size.y) * count;
+            if(extent*extent < theta2 * (cx*cx + cy*cy)) {
+                visitor.visit((int)count, sums[at+1] - count * shiftX, sums[at+2] - count * shiftY, sums[at+3], sums[at+4], sums[at+5]);
+                return;
+            }
+        }
+
+        Motions motions = pool.motions;
+        for(int i = 0; i < index; i++) {
+            int id = ids[i];
+            double dx = positions.x(id) - x, dy = positions.y(id) - y;
+            if(motions.size(id) == entitySize && dx*dx + dy*dy <= range2)
+                out.visit(id);
+        }
+
+        if(children[0] != null) {
+            for(QuadTree child : children)
+                child.querySums(x, y, shiftX, shiftY, range2, near2, theta2, entitySize, visitor, out);
+        }
+    }
+
+    // Empties the tree over new bounds, keeping every node for reuse
+    public void reset(double x, double y, double w, double h) {
+        setBounds(x, y, w, h);
+        clear();
     }
 
     public void clear() {
         index = 0;
-        for(int i = 0; i < boids.length; i++)
-            boids[i] = null;
-
+        sizes = 0;
         for(int i = 0; i < children.length; i++)
             children[i] = null;
+
+        if(pool.root == this)
+            pool.used = 0;
+    }
+
+    private void setBounds(double x, double y, double w, double h) {
+        position.x = x;
+        position.y = y;
+        size.x = w;
+        size.y = h;
     }
 
-    private void subDivide(double x, double y, double w, double h, int cap) {
-        children[0] = new QuadTree(x, y, w/2, h/2, cap);
-        children[1] = new QuadTree(x+w/2, y, w/2, h/2, cap);
-        children[2] = new QuadTree(x, y+h/2, w/2, h/2, cap);
-        children[3] = new QuadTree(x+w/2, y+h/2, w/2, h/2, cap);
+    private void subDivide(double x, double y, double w, double h) {
+        children[0] = pool.obtain(this, x, y, w/2, h/2);
+        children[1] = pool.obtain(this, x+w/2, y, w/2, h/2);
+        children[2] = pool.obtain(this, x, y+h/2, w/2, h/2);
+        children[3] = pool.obtain(this, x+w/2, y+h/2, w/2, h/2);
     }
 
-    private boolean pointInBounds(Vector p, Vector pos, Vector s) {
-        return p.x > pos.x && p.x <= pos.x+s.x && p.y > pos.y && p.y <= pos.y+s.y;
+    private boolean pointInBounds(double x, double y, Vector pos, Vector s) {
+        return x > pos.x && x <= pos.x+s.x && y > pos.y && y <= pos.y+s.y;
     }
 
-    private boolean intersects(Vector p1, Vector s1, Vector p2, Vector s2) {
-        return Math.min(p1.x + s1.x, p2.x + s2.x) > Math.max(p1.x, p2.x)
-               && Math.min(p1.y + s1.y, p2.y + s2.y) > Math.max(p1.y, p2.y);
+    private boolean intersects(double x, double y, double w, double h) {
+        return Math.min(x + w, position.x + size.x) > Math.max(x, position.x)
+               && Math.min(y + h, position.y + size.y) > Math.max(y, position.y);
+    }
+
+    public void outline(Path2D path) {
+        path.append(new Rectangle2D.Double(position.x, position.y, size.x, size.y), false);
+        if(children[0] != null) for(QuadTree child : children) child.outline(path);
     }
 
     public void draw(Graphics2D g) {
         g.drawRect((int)position.x, (int)position.y, (int)size.x, (int)size.y);
         if(children[0] != null) for(QuadTree child : children) child.draw(g);
     }
-}
\ No newline at end of file
+
+    private static class Pool {
+
+        private final List<QuadTree> nodes = new ArrayList<>();
+        private QuadTree root = null;
+        private int used = 0;
+
+        // What the sums were taken over, to tell the size of an id while querying them
+        private Motions motions = null;
+
+        private QuadTree obtain(QuadTree parent, double x, double y, double w, double h) {
+            if(used == nodes.size())
+                nodes.add(new QuadTree(parent.positions, this, parent.ids.length));
+
+            QuadTree node = nodes.get(used++);
+            node.setBounds(x, y, w, h);
+            node.index = 0;
+            node.sizes = 0;
+            for(int i = 0; i < node.children.length; i++)
+                node.children[i] = null;
+
+            return node;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package internal.quadtree;
+
+import internal.spatial.IdVisitor;
+import internal.spatial.IntList;
+import internal.spatial.KNearest;
+import internal.spatial.Motions;
+import internal.spatial.NearestFilter;
+import internal.spatial.NeighbourIndex;
+import internal.spatial.Positions;
+import internal.spatial.SumVisitor;
+
+import java.awt.geom.Path2D;
+
+import static internal.spatial.UniformGrid.shift;
+
+// Adapts the QuadTree to the NeighbourIndex interface, reusing the pooled nodes of one tree across builds.
+@SuppressWarnings("All")
+public class QuadTreeIndex implements NeighbourIndex {
+
+    private QuadTree tree = null;
+    private Positions positions = null;
+    private double width;
+    private double height;
+
+    // Nodes hold the points on their far edges only, so the tree starts just short of 0, where boids wrap to
+    @Override
+    public void build(Positions positions, IntList ids, double width, double height) {
+        if(tree == null || this.positions != positions) {
+            tree = new QuadTree(positions, -1, -1, width+1, height+1, 1);
+            this.positions = positions;
+        }
+        else tree.reset(-1, -1, width+1, height+1);
+        this.width = width;
+        this.height = height;
+
+        for(int i = 0; i < ids.size(); i++)
+            tree.insert(ids.get(i));
+    }
+
+    // Everything within range over an edge of the world is found by querying again around the point shifted to the
+    // other side, once for each edge and once more for a corner
+    @Override
+    public void query(double x, double y, double range, IntList out) {
+        double sx = shift(x, range, width), sy = shift(y, range, height);
+        box(x, y, range, out);
+        if(sx != 0) box(x + sx, y, range, out);
+        if(sy != 0) box(x, y + sy, range, out);
+        if(sx != 0 && sy != 0) box(x + sx, y + sy, range, out);
+    }
+
+    private void box(double x, double y, double range, IdVisitor out) {
+        tree.query(x - range, y - range, range * 2, range * 2, out);
+    }
+
+    // The same images of the point as query, each offering its ids with their offsets to that image. The point
+    // itself goes first so the ids it keeps bound the search around the others.
+    @Override
+    public void nearest(double x, double y, double range, NearestFilter filter, KNearest out) {
+        double sx = shift(x, range, width), sy = shift(y, range, height), range2 = range * range;
+        tree.nearest(x, y, range2, filter, out);
+        if(sx != 0) tree.nearest(x + sx, y, range2, filter, out);
+        if(sy != 0) tree.nearest(x, y + sy, range2, filter, out);
+        if(sx != 0 && sy != 0) tree.nearest(x + sx, y + sy, range2, filter, out);
+    }
+
+    @Override
+    public void sum(Motions motions) {
+        tree.sum(motions);
+    }
+
+    // The same images of the point as query, with the groups found around each moved back to where the point sees them
+    @Override
+    public void querySums(double x, double y, double range, double near, double theta, int size, SumVisitor sums, IntList out) {
+        double sx = shift(x, range, width), sy = shift(y, range, height);
+        double range2 = range * range, near2 = near * near, theta2 = theta * theta;
+        tree.querySums(x, y, 0, 0, range2, near2, theta2, size, sums, out);
+        if(sx != 0) tree.querySums(x + sx, y, sx, 0, range2, near2, theta2, size, sums, out);
+        if(sy != 0) tree.querySums(x, y + sy, 0, sy, range2, near2, theta2, size, sums, out);
+        if(sx != 0 && sy != 0) tree.querySums(x + sx, y + sy, sx, sy, range2, near2, theta2, size, sums, out);
+    }
+
+    @Override
+    public void outline(Path2D path) {
+        if(tree != null)
+            tree.outline(path);
+    }
+}
@@ -0,0 +1,84 @@
+package internal.render;
+
+import simulation.Snapshot;
+
+import java.awt.*;
+import java.util.Arrays;
+
+// Draws a snapshot grouped by colour bucket, so the colour is set once per bucket rather than per boid.
+// Entities are counting sorted into their buckets and every triangle is transformed on the CPU, camera
+// included, into reused integer vertex arrays, so a frame allocates nothing.
+@SuppressWarnings("All")
+public class BatchRenderer {
+
+    private final int[] start = new int[Palette.buckets + 2];
+    private int[] order = new int[0];
+
+    private final int[] xs = new int[3];
+    private final int[] ys = new int[3];
+
+    // Lines draws every boid as one stroke along its heading instead of a filled triangle.
+    // Only the first n entities listed in visible are drawn.
+    public void draw(Graphics2D g, Snapshot snapshot, int[] visible, int n, Camera camera, boolean lines) {
+        if(order.length < n) order = new int[n];
+
+        // Bucket 0 holds food, boid buckets are shifted up by one
+        Arrays.fill(start, 0);
+        for(int k = 0; k < n; k++)
+            start[bucket(snapshot, visible[k]) + 1]++;
+        for(int b = 0; b <= Palette.buckets; b++)
+            start[b+1] += start[b];
+
+        int[] next = start.clone();
+        for(int k = 0; k < n; k++)
+            order[next[bucket(snapshot, visible[k])]++] = visible[k];
+
+        double zoom = camera.getZoom();
+        int food = Math.max(1, (int)(2 * zoom));
+        g.setColor(Color.green);
+        for(int k = start[0]; k < start[1]; k++) {
+            int i = order[k];
+            g.fillRect((int)camera.screenX(snapshot.x(i)), (int)camera.screenY(snapshot.y(i)), food, food);
+        }
+
+        for(int b = 0; b < Palette.buckets; b++) {
+            if(start[b+1] == start[b+2])
+                continue;
+
+            g.setColor(Palette.color(b));
+            for(int k = start[b+1]; k < start[b+2]; k++) {
+                if(lines) line(g, snapshot, order[k], camera);
+                else triangle(g, snapshot, order[k], camera);
+            }
+        }
+    }
+
+    // Same triangle as Boid.draw, pointing along the heading
+    private void triangle(Graphics2D g, Snapshot snapshot, int i, Camera camera) {
+        float x = (float)camera.screenX(snapshot.x(i)), y = (float)camera.screenY(snapshot.y(i));
+        double heading = snapshot.heading(i);
+        double size = snapshot.size(i) * camera.getZoom();
+        float c = (float)(Math.cos(heading) * size), s = (float)(Math.sin(heading) * size);
+
+        xs[0] = (int)(x + 2*c);
+        ys[0] = (int)(y + 2*s);
+        xs[1] = (int)(x + s - 2*c);
+        ys[1] = (int)(y - c - 2*s);
+        xs[2] = (int)(x - s - 2*c);
+        ys[2] = (int)(y + c - 2*s);
+        g.fillPolygon(xs, ys, 3);
+    }
+
+    // From the tail to the tip of the triangle
+    private void line(Graphics2D g, Snapshot snapshot, int i, Camera camera) {
+        double x = camera.screenX(snapshot.x(i)), y = camera.screenY(snapshot.y(i));
+        double heading = snapshot.heading(i);
+        double size = snapshot.size(i) * camera.getZoom();
+        double c = Math.cos(heading) * size, s = Math.sin(heading) * size;
+        g.drawLine((int)(x - 2*c), (int)(y - 2*s), (int)(x + 2*c), (int)(y + 2*s));
+    }
+
+    private static int bucket(Snapshot snapshot, int i) {
+        return snapshot.size(i) == 0 ? 0 : Palette.bucket(snapshot.hue(i)) + 1;
+    }
+}
@@ -0,0 +1,85 @@
+package internal.render;
+
+import java.awt.geom.AffineTransform;
+
+// Which part of the world is on screen: the world point at the top left corner of the view and the
+// number of screen pixels per world unit. Immutable, so the render thread always sees a whole camera.
+@SuppressWarnings("All")
+public class Camera {
+
+    public static final Camera identity = new Camera(0, 0, 1);
+
+    private static final double minZoom = 0.01;
+    private static final double maxZoom = 16;
+
+    private final double x;
+    private final double y;
+    private final double zoom;
+
+    public Camera(double x, double y, double zoom) {
+        this.x = x;
+        this.y = y;
+        this.zoom = Math.max(minZoom, Math.min(maxZoom, zoom));
+    }
+
+    // The whole world centred in the view, as large as fits
+    public static Camera fit(int worldWidth, int worldHeight, int viewWidth, int viewHeight) {
+        if(worldWidth <= 0 || worldHeight <= 0 || viewWidth <= 0 || viewHeight <= 0)
+            return identity;
+
+        double zoom = Math.min((double)viewWidth / worldWidth, (double)viewHeight / worldHeight);
+        return new Camera(worldWidth / 2.0 - viewWidth / zoom / 2, worldHeight / 2.0 - viewHeight / zoom / 2, zoom);
+    }
+
+    // Moves the view by a distance in screen pixels
+    public Camera pan(double dx, double dy) {
+        return new Camera(x - dx / zoom, y - dy / zoom, zoom);
+    }
+
+    // Scales the view by a factor, keeping the world point under the given screen point where it is
+    public Camera zoom(double factor, double sx, double sy) {
+        double zoom = Math.max(minZoom, Math.min(maxZoom, this.zoom * factor));
+        double wx = worldX(sx), wy = worldY(sy);
+        return new Camera(wx - sx / zoom, wy - sy / zoom, zoom);
+    }
+
+    public double worldX(double sx) {
+        return x + sx / zoom;
+    }
+
+    public double worldY(double sy) {
+        return y + sy / zoom;
+    }
+
+    public double screenX(double wx) {
+        return (wx - x) * zoom;
+    }
+
+    public double screenY(double wy) {
+        return (wy - y) * zoom;
+    }
+
+    // Whether a world point is inside a view of the given size, widened by a margin in world units
+    public boolean visible(double wx, double wy, double margin, int viewWidth, int viewHeight) {
+        return wx >= x - margin && wy >= y - margin
+            && wx <= x + viewWidth / zoom + margin && wy <= y + viewHeight / zoom + margin;
+    }
+
+    public AffineTransform transform() {
+        AffineTransform transform = AffineTransform.getScaleInstance(zoom, zoom);
+        transform.translate(-x, -y);
+        return transform;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+}
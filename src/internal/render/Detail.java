@@ -0,0 +1,6 @@
+package internal.render;
+
+// How much of every entity is drawn, from the full antialiased shapes down to one pixel each
+public enum Detail {
+    FULL, TRIANGLES, LINES, PIXELS
+}
@@ -0,0 +1,134 @@
+package internal.render;
+
+import simulation.Snapshot;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// Picks a cheaper way to draw the entities as their count grows past each threshold:
+// antialiased shapes, then plain triangles, then oriented lines, then one pixel per entity.
+// Entities outside the camera's view are culled first, so both the level and the drawing
+// only depend on how many are actually on screen.
+@SuppressWarnings("All")
+public class LodRenderer {
+
+    // A level is only left downwards once the count is this far below its threshold, so it doesn't flicker
+    private static final double hysteresis = 0.9;
+
+    private final BatchRenderer batches = new BatchRenderer();
+
+    // Entity counts above which TRIANGLES, LINES and PIXELS are used
+    private volatile int[] thresholds = {2_000, 10_000, 40_000};
+    private volatile Detail detail = Detail.FULL;
+
+    private BufferedImage raster;
+    private int[] pixels;
+
+    // Indices of the entities in view, refilled every frame
+    private int[] visible = new int[0];
+    private volatile int visibleCount = 0;
+
+    public void draw(Graphics2D g, Snapshot snapshot, int width, int height, Color background) {
+        draw(g, snapshot, Camera.identity, width, height, background);
+    }
+
+    public void draw(Graphics2D g, Snapshot snapshot, Camera camera, int width, int height, Color background) {
+        int n = cull(snapshot, camera, width, height);
+        Detail detail = update(n);
+        switch(detail) {
+            case FULL :
+                Graphics2D view = (Graphics2D)g.create();
+                try {
+                    view.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    view.transform(camera.transform());
+                    for(int k = 0; k < n; k++) snapshot.draw(view, visible[k]);
+                } finally {
+                    view.dispose();
+                }
+                break;
+            case TRIANGLES :
+            case LINES :
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                batches.draw(g, snapshot, visible, n, camera, detail == Detail.LINES);
+                break;
+            case PIXELS :
+                drawPixels(g, snapshot, n, camera, width, height, background);
+                break;
+        }
+    }
+
+    // One pass over the positions, far cheaper per entity than drawing it.
+    // The margin covers the triangle, which reaches twice the entity's size from its centre.
+    private int cull(Snapshot snapshot, Camera camera, int width, int height) {
+        int count = snapshot.getCount();
+        if(visible.length < count) visible = new int[count];
+
+        int n = 0;
+        for(int i = 0; i < count; i++) {
+            if(camera.visible(snapshot.x(i), snapshot.y(i), 2 * snapshot.size(i) + 2, width, height))
+                visible[n++] = i;
+        }
+
+        visibleCount = n;
+        return n;
+    }
+
+    private Detail update(int count) {
+        int[] thresholds = this.thresholds;
+        Detail current = detail;
+
+        int level = 0;
+        while(level < thresholds.length && count > thresholds[level]) level++;
+        if(level < current.ordinal() && count > thresholds[current.ordinal()-1] * hysteresis)
+            level = current.ordinal();
+
+        return detail = Detail.values()[level];
+    }
+
+    // Writes entity colours straight into the backing array of an image and draws that in one call
+    private void drawPixels(Graphics2D g, Snapshot snapshot, int n, Camera camera, int width, int height, Color background) {
+        if(width <= 0 || height <= 0)
+            return;
+
+        if(raster == null || raster.getWidth() != width || raster.getHeight() != height) {
+            raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt)raster.getRaster().getDataBuffer()).getData();
+        }
+
+        Arrays.fill(pixels, background.getRGB());
+        int food = Color.green.getRGB();
+        for(int k = 0; k < n; k++) {
+            int i = visible[k];
+            int x = (int)camera.screenX(snapshot.x(i)), y = (int)camera.screenY(snapshot.y(i));
+            if(x < 0 || y < 0 || x >= width || y >= height)
+                continue;
+
+            pixels[y * width + x] = snapshot.size(i) == 0 ? food : Palette.rgb(Palette.bucket(snapshot.hue(i)));
+        }
+
+        g.drawImage(raster, 0, 0, null);
+    }
+
+    public Detail getDetail() {
+        return detail;
+    }
+
+    // Entities that were in view when the last frame was drawn
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    public int[] getThresholds() {
+        return thresholds.clone();
+    }
+
+    // Entity counts above which triangles, lines and pixels are drawn, in increasing order
+    public void setThresholds(int triangles, int lines, int pixels) {
+        if(triangles > lines || lines > pixels)
+            throw new IllegalArgumentException("Thresholds must increase: " + triangles + ", " + lines + ", " + pixels);
+
+        thresholds = new int[] {triangles, lines, pixels};
+    }
+}
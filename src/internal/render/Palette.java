@@ -0,0 +1,34 @@
+package internal.render;
+
+import java.awt.*;
+
+// Boid colours computed once for a fixed number of hue buckets instead of once per entity per frame
+@SuppressWarnings("All")
+public class Palette {
+
+    public static final int buckets = 64;
+
+    private static final Color[] colors = new Color[buckets];
+    private static final int[] rgb = new int[buckets];
+
+    static {
+        for(int i = 0; i < buckets; i++) {
+            colors[i] = Color.getHSBColor((i + 0.5f) / buckets, 0.6f, 0.7f);
+            rgb[i] = colors[i].getRGB();
+        }
+    }
+
+    // Hues wrap around like Color.getHSBColor does
+    public static int bucket(float hue) {
+        int b = (int)((hue - Math.floor(hue)) * buckets);
+        return b >= buckets ? 0 : b;
+    }
+
+    public static Color color(int bucket) {
+        return colors[bucket];
+    }
+
+    public static int rgb(int bucket) {
+        return rgb[bucket];
+    }
+}
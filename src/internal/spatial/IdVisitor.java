@@ -0,0 +1,8 @@
+package internal.spatial;
+
+// Receives the ids matched by a spatial query one at a time
+@FunctionalInterface
+public interface IdVisitor {
+
+    void visit(int id);
+}
@@ -0,0 +1,67 @@
+package internal.spatial;
+
+import java.util.Arrays;
+
+// Growable list of primitive ints that is cleared and reused instead of reallocated
+@SuppressWarnings("All")
+public class IntList implements IdVisitor {
+
+    private int[] data;
+    private int size = 0;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if(size == data.length)
+            data = Arrays.copyOf(data, size * 2);
+
+        data[size++] = value;
+    }
+
+    @Override
+    public void visit(int id) {
+        add(id);
+    }
+
+    public int pop() {
+        return data[--size];
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    // Linear scan, for short lists
+    public boolean contains(int value) {
+        for(int i = 0; i < size; i++)
+            if(data[i] == value) return true;
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Keeps only the first size values
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+}
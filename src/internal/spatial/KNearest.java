@@ -0,0 +1,76 @@
+package internal.spatial;
+
+// The k closest ids offered so far, in a fixed size max-heap on squared distance, so keeping the
+// nearest of m candidates costs O(m log k) with no allocation. Once full, bound() is the distance
+// a candidate has to beat, which lets an index skip whole regions that cannot hold one.
+@SuppressWarnings("All")
+public class KNearest {
+
+    private int[] ids;
+    private double[] d2;
+    private int k = 0;
+    private int size = 0;
+
+    public KNearest(int capacity) {
+        this.ids = new int[Math.max(capacity, 1)];
+        this.d2 = new double[ids.length];
+    }
+
+    // Empties the heap and sets how many ids it keeps
+    public void reset(int k) {
+        if(ids.length < k) {
+            ids = new int[k];
+            d2 = new double[k];
+        }
+
+        this.k = k;
+        this.size = 0;
+    }
+
+    // Squared distance an id must be under to be kept
+    public double bound() {
+        return size < k ? Double.POSITIVE_INFINITY : d2[0];
+    }
+
+    public void offer(int id, double distance2) {
+        if(size < k) {
+            int i = size++;
+            while(i > 0) {
+                int parent = (i - 1) >>> 1;
+                if(d2[parent] >= distance2) break;
+                ids[i] = ids[parent];
+                d2[i] = d2[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            d2[i] = distance2;
+            return;
+        }
+
+        if(distance2 >= d2[0])
+            return;
+
+        // Replaces the farthest and sifts the new root down
+        int i = 0;
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) break;
+            if(child + 1 < size && d2[child + 1] > d2[child]) child++;
+            if(d2[child] <= distance2) break;
+            ids[i] = ids[child];
+            d2[i] = d2[child];
+            i = child;
+        }
+        ids[i] = id;
+        d2[i] = distance2;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The kept ids in no particular order
+    public int get(int index) {
+        return ids[index];
+    }
+}
@@ -0,0 +1,14 @@
+package internal.spatial;
+
+// Read access to what the flocking rules sum up of an entity, for indices that keep sums over groups of
+// entities. Only entities of the same size, which is to say of the same species, are summed up together.
+public interface Motions extends Positions {
+
+    double vx(int id);
+
+    double vy(int id);
+
+    float hue(int id);
+
+    int size(int id);
+}
@@ -0,0 +1,8 @@
+package internal.spatial;
+
+// Decides which ids a nearest query may keep, given the offset from the query point to them
+@FunctionalInterface
+public interface NearestFilter {
+
+    boolean accept(int id, double dx, double dy);
+}
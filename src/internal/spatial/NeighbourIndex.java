@@ -0,0 +1,31 @@
+package internal.spatial;
+
+import java.awt.geom.Path2D;
+
+// Spatial index answering "which ids are near this point" for one set of entities
+public interface NeighbourIndex {
+
+    // Rebuilds the index over the given ids in a toroidal world of the given size
+    void build(Positions positions, IntList ids, double width, double height);
+
+    // Appends every id within range of the point on both axes, wrapping around the world edges
+    void query(double x, double y, double range, IntList out);
+
+    // Offers the ids within range of the point that the filter accepts to out, which keeps the nearest few.
+    // Regions that cannot hold anything closer than what out already keeps are skipped, nearest regions
+    // are visited first, so in a dense crowd the cost follows the number kept rather than the crowd.
+    void nearest(double x, double y, double range, NearestFilter filter, KNearest out);
+
+    // Sums up velocities, positions and hues over the regions of the index for querySums, until the next build.
+    // An index without regions small enough to be worth summing does nothing.
+    void sum(Motions motions);
+
+    // Like query, except that the entities of the given size in a region smaller than theta times its distance from
+    // the point go to sums as one group rather than one by one, if the region is wholly within range, wholly either
+    // side of near and does not hold the point. Entities of other sizes in such a region are left out. An index that
+    // keeps no sums appends every id in range.
+    void querySums(double x, double y, double range, double near, double theta, int size, SumVisitor sums, IntList out);
+
+    // Adds the outline of the index structure for the debug overlay
+    void outline(Path2D path);
+}
@@ -0,0 +1,9 @@
+package internal.spatial;
+
+// Read access to entity positions by id, so indices do not care how entities are stored
+public interface Positions {
+
+    double x(int id);
+
+    double y(int id);
+}
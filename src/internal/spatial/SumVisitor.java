@@ -0,0 +1,8 @@
+package internal.spatial;
+
+// Receives a group of entities that a query hands out as one, as sums of their positions, velocities and hues
+@FunctionalInterface
+public interface SumVisitor {
+
+    void visit(int count, double x, double y, double vx, double vy, double hue);
+}
@@ -0,0 +1,184 @@
+package internal.spatial;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+// Fixed size cells rebuilt every tick with a counting sort into flat arrays
+@SuppressWarnings("All")
+public class UniformGrid implements NeighbourIndex {
+
+    private final double cellSize;
+
+    private Positions positions;
+    private double width;
+    private double height;
+    private int columns = 1;
+    private int rows = 1;
+    private double cellWidth;
+    private double cellHeight;
+
+    // Ids of cell c are cellIds[cellStart[c]] until cellIds[cellStart[c+1]]
+    private int[] cellStart = new int[2];
+    private int[] cellIds = new int[16];
+    private int[] cellOf = new int[16];
+
+    public UniformGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void build(Positions positions, IntList ids, double width, double height) {
+        this.positions = positions;
+        this.width = width;
+        this.height = height;
+
+        // Cells are stretched to tile the world exactly so wrapped queries never meet a partial cell
+        this.columns = Math.max(1, (int)(width / cellSize));
+        this.rows = Math.max(1, (int)(height / cellSize));
+        this.cellWidth = Math.max(width, 1) / columns;
+        this.cellHeight = Math.max(height, 1) / rows;
+
+        int cells = columns * rows;
+        int n = ids.size();
+        if(cellStart.length < cells + 1) cellStart = new int[cells + 1];
+        if(cellIds.length < n) {
+            cellIds = new int[Math.max(n, cellIds.length * 2)];
+            cellOf = new int[cellIds.length];
+        }
+
+        // Count entities per cell, shifted by one so the prefix sum gives start offsets
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        for(int i = 0; i < n; i++) {
+            int id = ids.get(i);
+            int c = cell(column(positions.x(id)), row(positions.y(id)));
+            cellOf[i] = c;
+            cellStart[c + 1]++;
+        }
+
+        for(int c = 0; c < cells; c++)
+            cellStart[c + 1] += cellStart[c];
+
+        // Scatter ids, using the start offsets as cursors and shifting them back afterwards
+        for(int i = 0; i < n; i++)
+            cellIds[cellStart[cellOf[i]]++] = ids.get(i);
+
+        for(int c = cells; c > 0; c--)
+            cellStart[c] = cellStart[c - 1];
+        cellStart[0] = 0;
+    }
+
+    @Override
+    public void query(double x, double y, double range, IntList out) {
+        int cx0 = (int)Math.floor((x - range) / cellWidth), cx1 = (int)Math.floor((x + range) / cellWidth);
+        int cy0 = (int)Math.floor((y - range) / cellHeight), cy1 = (int)Math.floor((y + range) / cellHeight);
+
+        // A box wider than the world would visit the same cells twice
+        if(cx1 - cx0 >= columns) { cx0 = 0; cx1 = columns - 1; }
+        if(cy1 - cy0 >= rows) { cy0 = 0; cy1 = rows - 1; }
+
+        for(int cy = cy0; cy <= cy1; cy++) {
+            int row = Math.floorMod(cy, rows);
+            for(int cx = cx0; cx <= cx1; cx++) {
+                int c = cell(Math.floorMod(cx, columns), row);
+                for(int i = cellStart[c], end = cellStart[c + 1]; i < end; i++) {
+                    int id = cellIds[i];
+                    if(Math.abs(wrap(positions.x(id) - x, width)) <= range
+                       && Math.abs(wrap(positions.y(id) - y, height)) <= range)
+                        out.add(id);
+                }
+            }
+        }
+    }
+
+    // Rings of cells around the point's own, until a ring starts further away than the farthest id kept
+    @Override
+    public void nearest(double x, double y, double range, NearestFilter filter, KNearest out) {
+        double range2 = range * range;
+        double cell = Math.min(cellWidth, cellHeight);
+        int rings = (int)Math.ceil(range / cell);
+
+        // Rings that wrap around onto themselves would offer ids twice, so a small world is scanned whole
+        if(2 * rings + 1 > columns || 2 * rings + 1 > rows) {
+            for(int c = 0; c < columns * rows; c++)
+                offer(c, x, y, range2, filter, out);
+            return;
+        }
+
+        int cx = column(x), cy = row(y);
+        double edge = Math.max(0, Math.min(Math.min(x - cx * cellWidth, (cx + 1) * cellWidth - x),
+            Math.min(y - cy * cellHeight, (cy + 1) * cellHeight - y)));
+
+        for(int r = 0; r <= rings; r++) {
+            double near = r == 0 ? 0 : edge + (r - 1) * cell;
+            if(near * near > Math.min(range2, out.bound()))
+                break;
+
+            // The top and bottom rows of the ring in full, the rows between only at both ends
+            for(int dy = -r; dy <= r; dy++) {
+                int row = Math.floorMod(cy + dy, rows);
+                int step = dy == -r || dy == r ? 1 : 2 * r;
+                for(int dx = -r; dx <= r; dx += step)
+                    offer(cell(Math.floorMod(cx + dx, columns), row), x, y, range2, filter, out);
+            }
+        }
+    }
+
+    private void offer(int c, double x, double y, double range2, NearestFilter filter, KNearest out) {
+        for(int i = cellStart[c], end = cellStart[c + 1]; i < end; i++) {
+            int id = cellIds[i];
+            double dx = wrap(positions.x(id) - x, width), dy = wrap(positions.y(id) - y, height);
+            double d2 = dx*dx + dy*dy;
+            if(d2 <= range2 && d2 < out.bound() && filter.accept(id, dx, dy))
+                out.offer(id, d2);
+        }
+    }
+
+    // Cells are made about as large as the query range, far too large to stand in for the entities in them
+    @Override
+    public void sum(Motions motions) {
+    }
+
+    @Override
+    public void querySums(double x, double y, double range, double near, double theta, int size, SumVisitor sums, IntList out) {
+        query(x, y, range, out);
+    }
+
+    @Override
+    public void outline(Path2D path) {
+        for(int c = 0; c < columns * rows; c++) {
+            if(cellStart[c] == cellStart[c + 1])
+                continue;
+
+            path.append(new Rectangle2D.Double((c % columns) * cellWidth, (c / columns) * cellHeight,
+                cellWidth, cellHeight), false);
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int)(x / cellWidth)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int)(y / cellHeight)));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+
+    // Shortest signed distance along one axis of a toroidal world
+    public static double wrap(double d, double size) {
+        if(d > size / 2) return d - size;
+        if(d < -size / 2) return d + size;
+        return d;
+    }
+
+    // How far along one axis a point has to be moved by the world size for everything within range of it that
+    // lies over an edge to come back inside the world, 0 if nothing within range does. Indexes that do not
+    // wrap by themselves look around the point a second time there.
+    public static double shift(double v, double range, double size) {
+        if(range * 2 >= size) return 0;
+        return v - range < 0 ? size : v + range > size ? -size : 0;
+    }
+}
@@ -0,0 +1,110 @@
+package internal.spatial;
+
+import java.util.Arrays;
+
+import static internal.spatial.UniformGrid.wrap;
+
+// Verlet neighbour lists: every id keeps what a query with the range widened by a skin found around it, and
+// reuses that tick after tick instead of querying again. Two entities within range of each other now were
+// within range plus the skin at the last fill as long as neither has moved half the skin since, so the lists
+// hold every neighbour a fresh query would until something moves further, or entities come or go.
+@SuppressWarnings("All")
+public class VerletLists {
+
+    private final double skin;
+    private IntList[] lists = new IntList[0];
+
+    // Where every id was when the lists were last filled, and what they were filled over
+    private double[] x0 = new double[0];
+    private double[] y0 = new double[0];
+    private int count = -1;
+    private long changes = -1;
+    private double width;
+    private double height;
+
+    private long fills = 0;
+
+    public VerletLists(double skin) {
+        this.skin = skin;
+    }
+
+    // Whether the lists have to be filled again before they are used, given the entities as they are now and a
+    // count of the additions and removals so far. Ids are only read when nothing else has changed.
+    public boolean isStale(Positions positions, int n, long changes, double width, double height) {
+        if(n != count || changes != this.changes || width != this.width || height != this.height)
+            return true;
+
+        // Pairs only come closer by how far they moved relative to each other, so motion shared by everything,
+        // like a flock heading one way, is taken off first by measuring from the middle of all the moves
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for(int id = 0; id < n; id++) {
+            double dx = wrap(positions.x(id) - x0[id], width), dy = wrap(positions.y(id) - y0[id], height);
+            minX = Math.min(minX, dx);
+            maxX = Math.max(maxX, dx);
+            minY = Math.min(minY, dy);
+            maxY = Math.max(maxY, dy);
+        }
+
+        if(maxX - minX > skin || maxY - minY > skin)
+            return true;
+
+        double cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, limit2 = skin * skin / 4;
+        for(int id = 0; id < n; id++) {
+            double dx = wrap(positions.x(id) - x0[id], width) - cx, dy = wrap(positions.y(id) - y0[id], height) - cy;
+            if(dx*dx + dy*dy > limit2) return true;
+        }
+
+        return false;
+    }
+
+    // Takes the entities as they are now as what the lists are about to be filled over
+    public void mark(Positions positions, int n, long changes, double width, double height) {
+        if(x0.length < n) {
+            int capacity = Math.max(n, x0.length * 2);
+            x0 = new double[capacity];
+            y0 = new double[capacity];
+            lists = Arrays.copyOf(lists, capacity);
+        }
+
+        for(int id = 0; id < n; id++) {
+            x0[id] = positions.x(id);
+            y0[id] = positions.y(id);
+            if(lists[id] == null) lists[id] = new IntList();
+        }
+
+        this.count = n;
+        this.changes = changes;
+        this.width = width;
+        this.height = height;
+        fills++;
+    }
+
+    // Queries the index around the id with the range widened by the skin, keeping what is within that distance
+    // rather than the whole box the index gives. Threads can fill the lists of different ids at once.
+    public void fill(int id, NeighbourIndex index, Positions positions, double range) {
+        IntList list = lists[id];
+        list.clear();
+        double x = positions.x(id), y = positions.y(id), reach = range + skin;
+        index.query(x, y, reach, list);
+
+        int kept = 0;
+        for(int i = 0; i < list.size(); i++) {
+            int other = list.get(i);
+            double dx = wrap(positions.x(other) - x, width), dy = wrap(positions.y(other) - y, height);
+            if(other != id && dx*dx + dy*dy <= reach * reach) list.set(kept++, other);
+        }
+        list.truncate(kept);
+    }
+
+    public IntList get(int id) {
+        return lists[id];
+    }
+
+    public double getSkin() {
+        return skin;
+    }
+
+    public long getFills() {
+        return fills;
+    }
+}
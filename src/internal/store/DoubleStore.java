@@ -0,0 +1,99 @@
+package internal.store;
+
+import java.util.Arrays;
+
+// Entity store keeping positions and velocities in double precision
+@SuppressWarnings("All")
+public class DoubleStore extends EntityStore {
+
+    private double[] x;
+    private double[] y;
+    private double[] vx;
+    private double[] vy;
+
+    // Back buffer written during a tick while the arrays above are read
+    private double[] nx;
+    private double[] ny;
+    private double[] nvx;
+    private double[] nvy;
+
+    public DoubleStore(int capacity) {
+        super(capacity);
+        this.x = new double[this.capacity];
+        this.y = new double[this.capacity];
+        this.vx = new double[this.capacity];
+        this.vy = new double[this.capacity];
+        this.nx = new double[this.capacity];
+        this.ny = new double[this.capacity];
+        this.nvx = new double[this.capacity];
+        this.nvy = new double[this.capacity];
+    }
+
+    @Override
+    public double x(int id) {
+        return x[id];
+    }
+
+    @Override
+    public double y(int id) {
+        return y[id];
+    }
+
+    @Override
+    public double vx(int id) {
+        return vx[id];
+    }
+
+    @Override
+    public double vy(int id) {
+        return vy[id];
+    }
+
+    @Override
+    public void setPosition(int id, double x, double y) {
+        this.x[id] = x;
+        this.y[id] = y;
+    }
+
+    @Override
+    public void setVelocity(int id, double vx, double vy) {
+        this.vx[id] = vx;
+        this.vy[id] = vy;
+    }
+
+    @Override
+    public void setNext(int id, double x, double y, double vx, double vy) {
+        this.nx[id] = x;
+        this.ny[id] = y;
+        this.nvx[id] = vx;
+        this.nvy[id] = vy;
+    }
+
+    @Override
+    public void swap() {
+        double[] t = x; x = nx; nx = t;
+        t = y; y = ny; ny = t;
+        t = vx; vx = nvx; nvx = t;
+        t = vy; vy = nvy; nvy = t;
+    }
+
+    @Override
+    protected void growKinematics(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        nx = Arrays.copyOf(nx, capacity);
+        ny = Arrays.copyOf(ny, capacity);
+        nvx = Arrays.copyOf(nvx, capacity);
+        nvy = Arrays.copyOf(nvy, capacity);
+    }
+
+    @Override
+    protected void moveKinematics(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+    }
+}
@@ -0,0 +1,215 @@
+package internal.store;
+
+import internal.Boid;
+import internal.spatial.IntList;
+import internal.spatial.Motions;
+
+import java.util.Arrays;
+
+// Entities kept as parallel primitive arrays indexed by id instead of one object per entity.
+// Ids stay dense so loops never skip holes: removing an entity moves the last one into its slot.
+// Every entity also gets a handle that stays the same for its whole life, and freed handles and
+// slots are reused by the next additions, so births and deaths allocate nothing once warmed up.
+@SuppressWarnings("All")
+public abstract class EntityStore implements Motions {
+
+    protected int count = 0;
+    protected int capacity;
+
+    private int[] size;
+    private int[] life;
+    private float[] hue;
+    private float[] shade;
+    private boolean[] alive;
+
+    // Handle of every id, and the id of every handle or -1 while it is free
+    private int[] handles;
+    private int[] ids;
+    private int handleCount = 0;
+    private final IntList freeHandles = new IntList();
+
+    // Handles killed since the last removeDead, so removal costs O(deaths)
+    private final IntList dead = new IntList();
+
+    // Number of entities of every size, so counting food needs no scan
+    private int[] sizeCounts = new int[8];
+
+    // Additions and removals so far, ids kept from before the last one may be stale
+    private long changes = 0;
+
+    protected EntityStore(int capacity) {
+        this.capacity = Math.max(capacity, 16);
+        this.size = new int[this.capacity];
+        this.life = new int[this.capacity];
+        this.hue = new float[this.capacity];
+        this.shade = new float[this.capacity];
+        this.alive = new boolean[this.capacity];
+        this.handles = new int[this.capacity];
+        this.ids = new int[this.capacity];
+    }
+
+    public abstract double vx(int id);
+
+    public abstract double vy(int id);
+
+    public abstract void setPosition(int id, double x, double y);
+
+    public abstract void setVelocity(int id, double vx, double vy);
+
+    // Writes the kinematics an entity will have after the next swap, leaving the current state readable
+    public abstract void setNext(int id, double x, double y, double vx, double vy);
+
+    // Makes every state written with setNext current
+    public abstract void swap();
+
+    // Resizes the kinematic arrays of the subclass
+    protected abstract void growKinematics(int capacity);
+
+    // Copies the kinematic state of one slot into another
+    protected abstract void moveKinematics(int from, int to);
+
+    public int add(double x, double y, double vx, double vy, int size, float hue) {
+        if(count == capacity)
+            grow(capacity * 2);
+
+        int id = count++;
+        changes++;
+        setPosition(id, x, y);
+        setVelocity(id, vx, vy);
+        this.size[id] = size;
+        this.life[id] = Boid.startingLife;
+        this.hue[id] = hue;
+        this.shade[id] = hue;
+        this.alive[id] = true;
+
+        int handle = freeHandles.isEmpty() ? handleCount++ : freeHandles.pop();
+        if(handle == ids.length)
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        ids[handle] = id;
+        handles[id] = handle;
+
+        countSize(size, 1);
+        return id;
+    }
+
+    // Grows the arrays once ahead of adding many entities
+    public void ensureCapacity(int capacity) {
+        if(capacity > this.capacity)
+            grow(capacity);
+    }
+
+    // Removes every entity killed since the last call by moving the last entity into its slot.
+    // Ids of the moved entities change, their handles do not.
+    public void removeDead() {
+        if(!dead.isEmpty()) changes++;
+        for(int i = 0; i < dead.size(); i++) {
+            int handle = dead.get(i);
+            int id = ids[handle];
+            int last = --count;
+
+            countSize(size[id], -1);
+            ids[handle] = -1;
+            freeHandles.add(handle);
+
+            if(id != last) {
+                moveKinematics(last, id);
+                size[id] = size[last];
+                life[id] = life[last];
+                hue[id] = hue[last];
+                shade[id] = shade[last];
+                alive[id] = alive[last];
+                handles[id] = handles[last];
+                ids[handles[id]] = id;
+            }
+        }
+
+        dead.clear();
+    }
+
+    private void countSize(int size, int delta) {
+        if(size >= sizeCounts.length)
+            sizeCounts = Arrays.copyOf(sizeCounts, Math.max(size + 1, sizeCounts.length * 2));
+        sizeCounts[size] += delta;
+    }
+
+    private void grow(int capacity) {
+        growKinematics(capacity);
+        size = Arrays.copyOf(size, capacity);
+        life = Arrays.copyOf(life, capacity);
+        hue = Arrays.copyOf(hue, capacity);
+        shade = Arrays.copyOf(shade, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+        this.capacity = capacity;
+    }
+
+    public void clear() {
+        Arrays.fill(ids, 0, handleCount, -1);
+        Arrays.fill(sizeCounts, 0);
+        count = 0;
+        changes++;
+        handleCount = 0;
+        freeHandles.clear();
+        dead.clear();
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long changes() {
+        return changes;
+    }
+
+    public int size(int id) {
+        return size[id];
+    }
+
+    public int life(int id) {
+        return life[id];
+    }
+
+    public void setLife(int id, int life) {
+        this.life[id] = life;
+    }
+
+    public float hue(int id) {
+        return hue[id];
+    }
+
+    public float shade(int id) {
+        return shade[id];
+    }
+
+    public void setShade(int id, float shade) {
+        this.shade[id] = shade;
+    }
+
+    public boolean isAlive(int id) {
+        return alive[id];
+    }
+
+    // Stays in place, still readable, until the next removeDead
+    public void kill(int id) {
+        if(!alive[id])
+            return;
+
+        alive[id] = false;
+        dead.add(handles[id]);
+    }
+
+    // Stable for the life of the entity, unlike its id
+    public int handle(int id) {
+        return handles[id];
+    }
+
+    // Current id of the entity with the given handle, or -1 once it has been removed
+    public int id(int handle) {
+        return handle < handleCount ? ids[handle] : -1;
+    }
+
+    // Entities of the given size, dead ones included until they are removed
+    public int countOfSize(int size) {
+        return size < sizeCounts.length ? sizeCounts[size] : 0;
+    }
+}
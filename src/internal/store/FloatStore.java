@@ -0,0 +1,99 @@
+package internal.store;
+
+import java.util.Arrays;
+
+// Entity store keeping positions and velocities in float precision
+@SuppressWarnings("All")
+public class FloatStore extends EntityStore {
+
+    private float[] x;
+    private float[] y;
+    private float[] vx;
+    private float[] vy;
+
+    // Back buffer written during a tick while the arrays above are read
+    private float[] nx;
+    private float[] ny;
+    private float[] nvx;
+    private float[] nvy;
+
+    public FloatStore(int capacity) {
+        super(capacity);
+        this.x = new float[this.capacity];
+        this.y = new float[this.capacity];
+        this.vx = new float[this.capacity];
+        this.vy = new float[this.capacity];
+        this.nx = new float[this.capacity];
+        this.ny = new float[this.capacity];
+        this.nvx = new float[this.capacity];
+        this.nvy = new float[this.capacity];
+    }
+
+    @Override
+    public double x(int id) {
+        return x[id];
+    }
+
+    @Override
+    public double y(int id) {
+        return y[id];
+    }
+
+    @Override
+    public double vx(int id) {
+        return vx[id];
+    }
+
+    @Override
+    public double vy(int id) {
+        return vy[id];
+    }
+
+    @Override
+    public void setPosition(int id, double x, double y) {
+        this.x[id] = (float)x;
+        this.y[id] = (float)y;
+    }
+
+    @Override
+    public void setVelocity(int id, double vx, double vy) {
+        this.vx[id] = (float)vx;
+        this.vy[id] = (float)vy;
+    }
+
+    @Override
+    public void setNext(int id, double x, double y, double vx, double vy) {
+        this.nx[id] = (float)x;
+        this.ny[id] = (float)y;
+        this.nvx[id] = (float)vx;
+        this.nvy[id] = (float)vy;
+    }
+
+    @Override
+    public void swap() {
+        float[] t = x; x = nx; nx = t;
+        t = y; y = ny; ny = t;
+        t = vx; vx = nvx; nvx = t;
+        t = vy; vy = nvy; nvy = t;
+    }
+
+    @Override
+    protected void growKinematics(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        nx = Arrays.copyOf(nx, capacity);
+        ny = Arrays.copyOf(ny, capacity);
+        nvx = Arrays.copyOf(nvx, capacity);
+        nvy = Arrays.copyOf(nvy, capacity);
+    }
+
+    @Override
+    protected void moveKinematics(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+    }
+}
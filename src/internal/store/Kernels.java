@@ -0,0 +1,277 @@
+package internal.store;
+
+import internal.Config;
+import internal.FoodWeb;
+import internal.Steering;
+import internal.spatial.IntList;
+import internal.spatial.KNearest;
+import internal.spatial.NearestFilter;
+import internal.spatial.NeighbourIndex;
+import internal.spatial.SumVisitor;
+import internal.spatial.VerletLists;
+import simulation.World;
+
+import static internal.Boid.*;
+import static internal.spatial.UniformGrid.wrap;
+
+// The Boid steering rules run over entity ids of an EntityStore.
+// Reads only the current state and writes the next one, so one instance per thread can run concurrently.
+@SuppressWarnings("All")
+public class Kernels {
+
+    private final EntityStore store;
+    private final Config config;
+    private final Steering steering;
+    private final IntList candidates = new IntList();
+
+    // Neighbour offsets gathered by relation, so the steering rules run over whole batches
+    private double[] flockDx = new double[64], flockDy = new double[64];
+    private double[] flockVx = new double[64], flockVy = new double[64], flockHue = new double[64];
+    private double[] predatorDx = new double[64], predatorDy = new double[64];
+    private double[] preyDx = new double[64], preyDy = new double[64];
+    private int[] preyIds = new int[64];
+    private final IntList eatable = new IntList();
+
+    // The nearest visible flockmates when flocking topologically, and the boid they are found for
+    private final KNearest nearest = new KNearest(16);
+    private int self;
+    private int selfSpecies;
+    private FoodWeb selfWeb;
+    private double selfVx, selfVy;
+    private final NearestFilter flockmates = this::isVisibleFlockmate;
+
+    // Groups of flockmates the index sums up when flocking Barnes-Hut style, and how many there were
+    private final SumVisitor groups = this::flockGroup;
+    private double selfX, selfY;
+    private int grouped;
+
+    // Lists to take neighbours from instead of querying, and whether they are filled this tick, see setLists
+    private VerletLists lists = null;
+    private boolean fill = false;
+
+    // Predator and prey id pairs for every catch, applied once all kernels are done
+    private final IntList eats = new IntList();
+
+    // World size, distances are measured the short way around its edges
+    private double width;
+    private double height;
+
+    // Time spent in index queries since the last call to takeQueryNanos, when timed
+    private boolean timed = false;
+    private long queryNanos = 0;
+
+    public Kernels(EntityStore store, Config config) {
+        this.store = store;
+        this.config = config;
+        this.steering = Steering.create(config);
+    }
+
+    // One query of the index over every species, each neighbour is then sorted by what it is to this species.
+    // Flocking topologically keeps only the nearest visible flockmates, and when flockmates are all there
+    // can be around, finds them with a nearest query instead. Otherwise, with an opening angle and only
+    // flockmates around, groups of far away flockmates come from the index as one. Returns the number of
+    // neighbours that mattered, flockmates, predators or prey.
+    //
+    // Summed groups see flockmates as they were before the tick like everything else, which is why only
+    // this storage sums them: ObjectWorld moves its boids one after another as the tick goes.
+    //
+    // With Verlet lists neighbours come from the lists instead, which rules out the nearest query and sums,
+    // and flocking topologically picks the nearest visible flockmates from the list.
+    public int run(int id, int species, NeighbourIndex index, FoodWeb web, boolean flockmatesOnly, int w, int h) {
+        width = w;
+        height = h;
+        boolean flockingMode = config.flockingMode;
+        int k = config.nearestFlockmates;
+        double theta = config.openingAngle;
+
+        double x = store.x(id), y = store.y(id);
+        steering.begin(store.vx(id), store.vy(id));
+        int neighbours = 0;
+
+        if(k > 0) {
+            nearest.reset(k);
+            self = id;
+            selfSpecies = species;
+            selfWeb = web;
+            selfVx = store.vx(id);
+            selfVy = store.vy(id);
+        }
+
+        IntList candidates = this.candidates;
+        if(lists != null) candidates = listed(id, x, y, index);
+        else if(k > 0 && flockmatesOnly) {
+            queryNearest(x, y, index);
+            candidates.clear();
+        }
+        else if(theta > 0 && flockmatesOnly) {
+            selfX = x;
+            selfY = y;
+            grouped = 0;
+            querySums(id, theta, index);
+            neighbours += grouped;
+        }
+        else query(id, index);
+        if(flockDx.length < candidates.size()) grow(candidates.size());
+
+        // Lists reach a skin further than the view, what is beyond it is dropped before it costs anything more
+        double reach2 = lists != null ? viewRange * viewRange : Double.MAX_VALUE;
+        int flock = 0, predators = 0, prey = 0;
+        for(int i = 0; i < candidates.size(); i++) {
+            int b = candidates.get(i);
+            double dx = dx(b, x), dy = dy(b, y);
+            if(dx*dx + dy*dy > reach2)
+                continue;
+
+            int relation = web.relation(species, World.speciesOf(store.size(b)));
+            if(relation == 0 || b == id)
+                continue;
+
+            if((relation & FoodWeb.flock) != 0 && k > 0) {
+                if(Steering.sees(dx, dy, selfVx, selfVy)) nearest.offer(b, dx*dx + dy*dy);
+                continue;
+            }
+
+            neighbours++;
+            if((relation & FoodWeb.flock) != 0) {
+                flockDx[flock] = dx;
+                flockDy[flock] = dy;
+                flockVx[flock] = store.vx(b);
+                flockVy[flock] = store.vy(b);
+                flockHue[flock++] = store.hue(b);
+            }
+            if((relation & FoodWeb.predator) != 0) {
+                predatorDx[predators] = dx;
+                predatorDy[predators++] = dy;
+            }
+            if((relation & FoodWeb.prey) != 0) {
+                preyDx[prey] = dx;
+                preyDy[prey] = dy;
+                preyIds[prey++] = b;
+            }
+        }
+
+        if(k > 0) {
+            if(flockDx.length < nearest.size()) grow(nearest.size());
+            for(int i = 0; i < nearest.size(); i++) {
+                int b = nearest.get(i);
+                flockDx[flock] = dx(b, x);
+                flockDy[flock] = dy(b, y);
+                flockVx[flock] = store.vx(b);
+                flockVy[flock] = store.vy(b);
+                flockHue[flock++] = store.hue(b);
+            }
+            neighbours += flock;
+        }
+
+        steering.flock(flockDx, flockDy, flockVx, flockVy, flockHue, flock);
+        steering.predators(predatorDx, predatorDy, predators);
+
+        eatable.clear();
+        steering.prey(preyDx, preyDy, prey, eatable);
+        for(int i = 0; i < eatable.size(); i++) {
+            int b = preyIds[eatable.get(i)];
+            if(store.isAlive(b) && !flockingMode) {
+                eats.add(id);
+                eats.add(b);
+            }
+        }
+
+        steering.finish();
+        double vx = steering.vx(), vy = steering.vy();
+
+        x += vx;
+        y += vy;
+        if(x > width) x = 0;
+        else if(x < 0) x = width-1;
+
+        if(y > height) y = 0;
+        else if(y < 0) y = height-1;
+
+        store.setNext(id, x, y, vx, vy);
+        store.setShade(id, flockingMode ? steering.hue(store.hue(id)) : store.hue(id));
+        return neighbours;
+    }
+
+    public IntList eats() {
+        return eats;
+    }
+
+    // Lists are filled on ticks they went stale on and otherwise read as they are, null goes back to querying
+    public void setLists(VerletLists lists, boolean fill) {
+        this.lists = lists;
+        this.fill = fill;
+    }
+
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    public long takeQueryNanos() {
+        long nanos = queryNanos;
+        queryNanos = 0;
+        return nanos;
+    }
+
+    private void grow(int n) {
+        n = Math.max(n, flockDx.length * 2);
+        flockDx = new double[n];
+        flockDy = new double[n];
+        flockVx = new double[n];
+        flockVy = new double[n];
+        flockHue = new double[n];
+        predatorDx = new double[n];
+        predatorDy = new double[n];
+        preyDx = new double[n];
+        preyDy = new double[n];
+        preyIds = new int[n];
+    }
+
+    private void query(int id, NeighbourIndex index) {
+        long start = timed ? System.nanoTime() : 0;
+        candidates.clear();
+        index.query(store.x(id), store.y(id), viewRange, candidates);
+        if(timed) queryNanos += System.nanoTime() - start;
+    }
+
+    private IntList listed(int id, double x, double y, NeighbourIndex index) {
+        if(fill) {
+            long start = timed ? System.nanoTime() : 0;
+            lists.fill(id, index, store, viewRange);
+            if(timed) queryNanos += System.nanoTime() - start;
+        }
+
+        return lists.get(id);
+    }
+
+    private void querySums(int id, double theta, NeighbourIndex index) {
+        long start = timed ? System.nanoTime() : 0;
+        candidates.clear();
+        index.querySums(selfX, selfY, viewRange, desiredSeparation, theta, store.size(id), groups, candidates);
+        if(timed) queryNanos += System.nanoTime() - start;
+    }
+
+    // Sums of positions become sums of offsets from this boid
+    private void flockGroup(int count, double x, double y, double vx, double vy, double hue) {
+        steering.flockGroup(count, x - count * selfX, y - count * selfY, vx, vy, hue);
+        grouped += count;
+    }
+
+    private boolean isVisibleFlockmate(int b, double dx, double dy) {
+        return b != self && (selfWeb.relation(selfSpecies, World.speciesOf(store.size(b))) & FoodWeb.flock) != 0
+            && Steering.sees(dx, dy, selfVx, selfVy);
+    }
+
+    private void queryNearest(double x, double y, NeighbourIndex index) {
+        long start = timed ? System.nanoTime() : 0;
+        index.nearest(x, y, viewRange, flockmates, nearest);
+        if(timed) queryNanos += System.nanoTime() - start;
+    }
+
+    private double dx(int b, double x) {
+        return wrap(store.x(b) - x, width);
+    }
+
+    private double dy(int b, double y) {
+        return wrap(store.y(b) - y, height);
+    }
+}
@@ -0,0 +1,127 @@
+package simulation;
+
+import internal.render.Camera;
+import internal.render.LodRenderer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Renders published snapshots into an accelerated back buffer on its own thread.
+// The paint callback only copies the finished frame to the screen.
+@SuppressWarnings("All")
+public class ActiveRenderer implements Runnable {
+
+    private static final long frameNanos = 1_000_000_000L / 60;
+
+    private final JComponent target;
+    private final Supplier<Snapshot> snapshots;
+    private final Supplier<Camera> cameras;
+    private final LodRenderer lod;
+    private final TickMetrics metrics;
+
+    private volatile boolean showQuads = false;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // The renderer draws into back while paint copies front, guarded by this object
+    private VolatileImage front;
+    private VolatileImage back;
+
+    public ActiveRenderer(JComponent target, Supplier<Snapshot> snapshots, Supplier<Camera> cameras, LodRenderer lod,
+                          TickMetrics metrics) {
+        this.target = target;
+        this.snapshots = snapshots;
+        this.cameras = cameras;
+        this.lod = lod;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        Snapshot last = null;
+        Camera lastCamera = null;
+        long next = System.nanoTime();
+        while(running) {
+            // A moved camera needs a new frame even while the simulation is paused
+            Snapshot snapshot = snapshots.get();
+            Camera camera = cameras.get();
+            if((snapshot != last || camera != lastCamera) && render(snapshot, camera)) {
+                last = snapshot;
+                lastCamera = camera;
+                target.repaint();
+            }
+
+            next += frameNanos;
+            long wait = next - System.nanoTime();
+            if(wait > 0) LockSupport.parkNanos(wait);
+            else next = System.nanoTime();
+        }
+    }
+
+    private boolean render(Snapshot snapshot, Camera camera) {
+        int w = target.getWidth(), h = target.getHeight();
+        GraphicsConfiguration gc = target.getGraphicsConfiguration();
+        if(w <= 0 || h <= 0 || gc == null)
+            return false;
+
+        if(back == null || back.getWidth() != w || back.getHeight() != h
+           || back.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE)
+            back = gc.createCompatibleVolatileImage(w, h);
+
+        long start = metrics.start();
+        Graphics2D g = back.createGraphics();
+        try {
+            g.setColor(target.getBackground());
+            g.fillRect(0, 0, w, h);
+            lod.draw(g, snapshot, camera, w, h, target.getBackground());
+
+            if(showQuads) {
+                g.setColor(new Color(255, 255, 255, 50));
+                snapshot.drawQuads(g, camera.transform());
+            }
+        } finally {
+            g.dispose();
+        }
+        metrics.stop(Phase.RENDER, start);
+
+        if(back.contentsLost())
+            return false;
+
+        synchronized(this) {
+            VolatileImage t = front;
+            front = back;
+            back = t;
+        }
+
+        return true;
+    }
+
+    // Called from paintComponent, returns false when there is no frame to show yet
+    public synchronized boolean blit(Graphics g) {
+        if(front == null || front.contentsLost())
+            return false;
+
+        g.drawImage(front, 0, 0, null);
+        return true;
+    }
+
+    public void setShowQuads(boolean showQuads) {
+        this.showQuads = showQuads;
+    }
+
+    public synchronized void start() {
+        if(running) return;
+
+        running = true;
+        thread = new Thread(this, "Renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+    }
+}
@@ -0,0 +1,367 @@
+package simulation;
+
+import internal.Boid;
+import internal.spatial.IntList;
+import internal.spatial.NeighbourIndex;
+import internal.spatial.VerletLists;
+import internal.store.DoubleStore;
+import internal.store.EntityStore;
+import internal.store.FloatStore;
+import internal.store.Kernels;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+// World backed by packed primitive arrays, with the steering rules running over entity ids.
+// Every tick reads the previous state and writes the next one, so the update can be split across threads.
+@SuppressWarnings("All")
+public class ArrayWorld extends World {
+
+    private static final int chunksPerThread = 4;
+
+    private final EntityStore store;
+    private final Kernels[] kernels;
+    private final ForkJoinPool pool;
+
+    // Every entity in one index, tagged with its species through its size
+    private final IntList ids = new IntList();
+    private final int[] counts;
+    private final boolean[] present;
+    private final boolean[] flockmatesOnly;
+    private final NeighbourIndex index;
+
+    // Verlet lists while the config asks for them, and whether they are filled this tick. The index is only
+    // built on the ticks they are, so the outline shows it as it was then.
+    private VerletLists lists = null;
+    private boolean fill = true;
+
+    // Entities owned by another process and copied in for one tick, they are seen but not moved, see Shard
+    private int ghostStart = 0;
+    private int ghostEnd = 0;
+    private final IntList ghostKills = new IntList();
+
+    // The part of the width this world grows food in, all of it unless it is one strip of a sharded world
+    private double shareStart = 0;
+    private double share = 1;
+
+    // Per chunk, written by whichever thread runs the chunk
+    private final long[] chunkNanos;
+    private final long[][] neighbours;
+
+    public ArrayWorld(int species, int width, int height, Indexing indexing, boolean floats, int threads) {
+        super(species, width, height, indexing);
+        this.store = floats ? new FloatStore(1024) : new DoubleStore(1024);
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        this.kernels = new Kernels[threads > 1 ? threads * chunksPerThread : 1];
+        for(int i = 0; i < kernels.length; i++)
+            kernels[i] = new Kernels(store, config);
+        this.chunkNanos = new long[kernels.length];
+        this.neighbours = new long[kernels.length][species+1];
+
+        this.counts = new int[species+1];
+        this.present = new boolean[species+1];
+        this.flockmatesOnly = new boolean[species+1];
+        this.index = indexing.create();
+    }
+
+    @Override
+    public void step() {
+        long start = metrics.start();
+        updateLists();
+        metrics.stop(Phase.LISTS, start);
+        advance();
+    }
+
+    // The rest of a tick once the lists are up to date, split out so a shard can add ghosts in between
+    void advance() {
+        long start = metrics.start();
+        updateBoidLists();
+        metrics.stop(Phase.INDEX, start);
+
+        simulateBoids();
+        ticks++;
+        endTick();
+    }
+
+    private void simulateBoids() {
+        long start = metrics.start();
+        boolean timed = metrics.isEnabled();
+        for(Kernels k : kernels) {
+            k.setTimed(timed);
+            k.setLists(lists, fill);
+        }
+
+        int n = store.count(); // Births during this tick start moving next tick
+        if(pool == null) simulate(0, n);
+        else pool.invoke(new Simulate(0, kernels.length, n));
+
+        store.swap();
+        resolve(n);
+        recordSimulation(start);
+    }
+
+    // Queries and steering are interleaved on several threads, so the wall time is split by their share of the work
+    private void recordSimulation(long start) {
+        long query = 0, total = 0;
+        for(int c = 0; c < kernels.length; c++) {
+            query += kernels[c].takeQueryNanos();
+            total += chunkNanos[c];
+        }
+
+        for(int s = 1; s <= species; s++) {
+            long sum = 0;
+            for(long[] chunk : neighbours) sum += chunk[s];
+            metrics.neighbours(s, sum, counts[s]);
+        }
+
+        if(start == 0)
+            return;
+
+        long wall = System.nanoTime() - start;
+        long queryWall = total == 0 ? 0 : (long)(wall * ((double)query / total));
+        metrics.record(Phase.QUERY, queryWall);
+        metrics.record(Phase.STEERING, wall - queryWall);
+    }
+
+    private void simulate(int chunk, int n) {
+        long start = System.nanoTime();
+        Kernels k = kernels[chunk];
+        long[] found = neighbours[chunk];
+        Arrays.fill(found, 0);
+        k.eats().clear();
+
+        int from = (int)((long)n * chunk / kernels.length);
+        int to = (int)((long)n * (chunk+1) / kernels.length);
+        for(int id = from; id < to; id++) {
+            int s = speciesOf(store.size(id));
+            if(s == 0 || isGhost(id)) {
+                store.setNext(id, store.x(id), store.y(id), store.vx(id), store.vy(id));
+                continue;
+            }
+
+            found[s] += k.run(id, s, index, web, flockmatesOnly[s], width, height);
+        }
+
+        chunkNanos[chunk] = System.nanoTime() - start;
+    }
+
+    // Applies catches and ageing in id order on one thread, so the outcome does not depend on the thread count
+    private void resolve(int n) {
+        for(Kernels k : kernels) {
+            IntList eats = k.eats();
+            for(int i = 0; i < eats.size(); i += 2) {
+                int prey = eats.get(i+1);
+                if(!store.isAlive(prey))
+                    continue;
+
+                // A ghost's death is counted by the shard that owns it once told
+                if(isGhost(prey)) ghostKills.add(prey);
+                else if(store.size(prey) > 0) metrics.eaten();
+                store.kill(prey);
+                incrementLife(eats.get(i), prey);
+            }
+        }
+
+        boolean flockingMode = config.flockingMode;
+        for(int id = 0; id < n; id++) {
+            if(store.size(id) == 0 || isGhost(id))
+                continue;
+
+            int life = store.life(id);
+            store.setLife(id, life - 1);
+            if(life == 0 && !flockingMode && store.isAlive(id)) {
+                store.kill(id);
+                metrics.starved();
+            }
+        }
+    }
+
+    private void incrementLife(int id, int prey) {
+        int size = store.size(id);
+        int life = store.life(id) + Math.max(store.life(prey), Boid.startingLife);
+        if(life > Boid.startingLife * size) {
+            spawn(store.x(id), store.y(id), size);
+            metrics.birth();
+            life -= Boid.startingLife/2 * size;
+        }
+
+        store.setLife(id, life);
+    }
+
+    private void updateBoidLists() {
+        int n = store.count();
+        ids.clear();
+        Arrays.fill(counts, 0);
+        Arrays.fill(present, false);
+        for(int id = 0; id < n; id++) {
+            ids.add(id);
+            int s = speciesOf(store.size(id));
+            if(!isGhost(id)) counts[s]++;
+            present[s] = true;
+        }
+        findFlockmatesOnly(present, flockmatesOnly);
+
+        double skin = config.neighbourSkin;
+        if(skin <= 0) lists = null;
+        else if(lists == null || lists.getSkin() != skin) lists = new VerletLists(skin);
+
+        fill = lists == null || lists.isStale(store, n, store.changes(), width, height);
+        if(!fill)
+            return;
+
+        index.build(store, ids, width, height);
+        if(lists != null) lists.mark(store, n, store.changes(), width, height);
+        else if(config.openingAngle > 0) index.sum(store);
+    }
+
+    void updateLists() {
+        if(config.flockingMode)
+            return;
+
+        store.removeDead();
+
+        int food = store.countOfSize(0);
+        int limit = (int)Math.round(500 * share), rate = (int)Math.ceil((species+3) * share);
+        for(int i = 0; i < rate && food < limit; i++, food++) {
+            store.add((shareStart + Math.random() * share) * width, Math.random() * height, 0, 0, 0, 0);
+            metrics.foodSpawned();
+        }
+    }
+
+    private boolean isGhost(int id) {
+        return id >= ghostStart && id < ghostEnd;
+    }
+
+    // Marks a range of ids as ghosts until the next call, an empty range ends them
+    void setGhosts(int start, int end) {
+        ghostStart = start;
+        ghostEnd = end;
+    }
+
+    // Ids of ghosts eaten since the last call to clear, in the order they were eaten
+    IntList ghostKills() {
+        return ghostKills;
+    }
+
+    // Grows food only within the given fractions of the width, scaling the amount to match
+    void setShare(double start, double share) {
+        this.shareStart = start;
+        this.share = share;
+    }
+
+    EntityStore store() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        if(pool != null) pool.shutdown();
+    }
+
+    @Override
+    public Snapshot snapshot(boolean withQuads) {
+        Path2D quads = null;
+        if(withQuads) {
+            quads = new Path2D.Double();
+            index.outline(quads);
+        }
+
+        Snapshot snapshot = new Snapshot(store.count(), ticks, quads);
+        for(int id = 0; id < store.count(); id++) {
+            snapshot.add(store.x(id), store.y(id), Math.atan2(store.vy(id), store.vx(id)),
+                store.shade(id), store.size(id), store.isAlive(id));
+        }
+
+        return snapshot;
+    }
+
+    @Override
+    public boolean canCheckpoint() {
+        return true;
+    }
+
+    @Override
+    public Checkpoint checkpoint() {
+        Checkpoint checkpoint = new Checkpoint(species, web, config, width, height, ticks, store.count());
+        for(int id = 0; id < store.count(); id++) {
+            checkpoint.add(store.x(id), store.y(id), store.vx(id), store.vy(id), store.size(id), store.life(id),
+                store.hue(id), store.shade(id), store.isAlive(id));
+        }
+
+        return checkpoint;
+    }
+
+    @Override
+    void load(Checkpoint c) {
+        store.clear();
+        store.ensureCapacity(c.count);
+        for(int i = 0; i < c.count; i++) {
+            int id = store.add(c.x[i], c.y[i], c.vx[i], c.vy[i], c.size[i], c.hue[i]);
+            store.setLife(id, c.life[i]);
+            store.setShade(id, c.shade[i]);
+            if(!c.alive[i]) store.kill(id);
+        }
+    }
+
+    @Override
+    public void spawn(double x, double y, int size) {
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        float hue = config.flockingMode ? rng.nextFloat() : size / 5f;
+        store.add(x, y, rng.nextInt(5) - 2.5, rng.nextInt(5) - 2.5, size, hue);
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+    }
+
+    @Override
+    public int getCount() {
+        return store.count();
+    }
+
+    @Override
+    public long census(int[] population) {
+        long life = 0;
+        for(int id = 0; id < store.count(); id++) {
+            if(!store.isAlive(id) || isGhost(id))
+                continue;
+
+            int size = store.size(id);
+            population[speciesOf(size)]++;
+            if(size > 0) life += store.life(id);
+        }
+
+        return life;
+    }
+
+    private class Simulate extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int n;
+
+        private Simulate(int from, int to, int n) {
+            this.from = from;
+            this.to = to;
+            this.n = n;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                simulate(from, n);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new Simulate(from, mid, n), new Simulate(mid, to, n));
+        }
+    }
+}
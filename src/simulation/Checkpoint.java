@@ -0,0 +1,409 @@
+package simulation;
+
+import internal.Config;
+import internal.FoodWeb;
+import internal.spatial.IntList;
+import internal.spatial.Positions;
+import internal.spatial.UniformGrid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Everything needed to resume a world: its entities, size, tick count, food web and its steering settings.
+// Taking one copies the world into plain arrays between ticks, which is quick, and the copy can then be
+// written on a background thread while the simulation carries on.
+//
+// The file is a versioned header followed by one column per field, so both directions are bulk copies
+// through a direct buffer. Restoring works into either storage, whichever one the checkpoint came from.
+@SuppressWarnings("All")
+public class Checkpoint {
+
+    private static final int magic = 0x42434B50; // "BCKP"
+    private static final int version = 3; // 3 added nearest flockmates, 2 the food web, 1 is read as the default chain
+    private static final int bufferBytes = 1 << 20;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Checkpoint writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final int species;
+    final FoodWeb web;
+    final int width;
+    final int height;
+    final long ticks;
+    final int count;
+
+    // The world's settings, weights in the order of Config.weights()
+    final boolean flockingMode;
+    final double[] weights;
+    final int nearestFlockmates;
+
+    final double[] x;
+    final double[] y;
+    final double[] vx;
+    final double[] vy;
+    final int[] size;
+    final int[] life;
+    final float[] hue;
+    final float[] shade;
+    final boolean[] alive;
+
+    private int index = 0;
+
+    Checkpoint(int species, FoodWeb web, Config config, int width, int height, long ticks, int count) {
+        this(species, web, width, height, ticks, count, config.flockingMode, config.weights(), config.nearestFlockmates);
+    }
+
+    private Checkpoint(int species, FoodWeb web, int width, int height, long ticks, int count, boolean flockingMode,
+                       double[] weights, int nearestFlockmates) {
+        this.species = species;
+        this.web = web;
+        this.width = width;
+        this.height = height;
+        this.ticks = ticks;
+        this.count = count;
+        this.flockingMode = flockingMode;
+        this.weights = weights;
+        this.nearestFlockmates = nearestFlockmates;
+
+        this.x = new double[count];
+        this.y = new double[count];
+        this.vx = new double[count];
+        this.vy = new double[count];
+        this.size = new int[count];
+        this.life = new int[count];
+        this.hue = new float[count];
+        this.shade = new float[count];
+        this.alive = new boolean[count];
+    }
+
+    void add(double x, double y, double vx, double vy, int size, int life, float hue, float shade, boolean alive) {
+        this.x[index] = x;
+        this.y[index] = y;
+        this.vx[index] = vx;
+        this.vy[index] = vy;
+        this.size[index] = size;
+        this.life[index] = life;
+        this.hue[index] = hue;
+        this.shade[index] = shade;
+        this.alive[index] = alive;
+        index++;
+    }
+
+    // Builds a new world with the checkpointed settings, holding the checkpointed entities
+    public World restore(Storage storage, Indexing indexing, int threads) {
+        World world = World.create(storage, indexing, threads, species, width, height);
+        world.getConfig().flockingMode = flockingMode;
+        world.getConfig().setWeights(weights);
+        world.getConfig().nearestFlockmates = nearestFlockmates;
+        world.setFoodWeb(web);
+        world.load(this);
+        world.ticks = ticks;
+        return world;
+    }
+
+    // Writes on a background thread through a temporary file, so a crash never leaves a half written checkpoint
+    public CompletableFuture<Path> writeAsync(Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                write(file);
+                return file;
+            }catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, writer);
+    }
+
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            Columns out = new Columns(channel);
+            ByteBuffer buffer = out.buffer;
+            buffer.putInt(magic);
+            buffer.putInt(version);
+            buffer.putInt(species);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putLong(ticks);
+            buffer.put((byte)(flockingMode ? 1 : 0));
+            buffer.putInt(weights.length);
+            for(double weight : weights) buffer.putDouble(weight);
+            for(int a = 0; a <= species; a++) {
+                for(int b = 0; b <= species; b++) {
+                    out.room(1);
+                    buffer.put((byte)(web.eats(a, b) ? 1 : 0));
+                }
+            }
+            out.room(8);
+            buffer.putInt(nearestFlockmates);
+            buffer.putInt(count);
+
+            out.write(x);
+            out.write(y);
+            out.write(vx);
+            out.write(vy);
+            out.write(size);
+            out.write(life);
+            out.write(hue);
+            out.write(shade);
+            out.write(alive);
+            out.flush();
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Checkpoint read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Columns in = new Columns(channel);
+            ByteBuffer buffer = in.buffer;
+            buffer.limit(0); // Nothing read yet
+            in.fill(8);
+            if(buffer.getInt() != magic)
+                throw new IOException("Not a boids checkpoint: " + file);
+            int version = buffer.getInt();
+            if(version < 1 || version > Checkpoint.version)
+                throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+
+            in.fill(4 * 3 + 8 + 1 + 4);
+            int species = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            long ticks = buffer.getLong();
+            boolean flockingMode = buffer.get() != 0;
+            double[] weights = new double[buffer.getInt()];
+            in.fill(weights.length * 8);
+            for(int i = 0; i < weights.length; i++) weights[i] = buffer.getDouble();
+
+            FoodWeb web = FoodWeb.chain(species);
+            if(version >= 2) {
+                boolean[][] eats = new boolean[species+1][species+1];
+                for(boolean[] row : eats) in.read(row);
+                web = new FoodWeb(eats);
+            }
+
+            int nearestFlockmates = 0;
+            if(version >= 3) {
+                in.fill(4);
+                nearestFlockmates = buffer.getInt();
+            }
+
+            in.fill(4);
+            int count = buffer.getInt();
+
+            Checkpoint checkpoint = new Checkpoint(species, web, width, height, ticks, count, flockingMode, weights,
+                nearestFlockmates);
+            in.read(checkpoint.x);
+            in.read(checkpoint.y);
+            in.read(checkpoint.vx);
+            in.read(checkpoint.vy);
+            in.read(checkpoint.size);
+            in.read(checkpoint.life);
+            in.read(checkpoint.hue);
+            in.read(checkpoint.shade);
+            in.read(checkpoint.alive);
+            checkpoint.index = count;
+            return checkpoint;
+        }
+    }
+
+    // The living entities of several checkpoints of the same world as one, such as the strips of a sharded run
+    static Checkpoint merge(List<Checkpoint> parts) {
+        Checkpoint first = parts.get(0);
+        int count = 0;
+        for(Checkpoint part : parts)
+            for(int i = 0; i < part.count; i++)
+                if(part.alive[i]) count++;
+
+        Checkpoint merged = new Checkpoint(first.species, first.web, first.width, first.height, first.ticks, count,
+            first.flockingMode, first.weights, first.nearestFlockmates);
+        for(Checkpoint part : parts) {
+            for(int i = 0; i < part.count; i++) {
+                if(part.alive[i]) merged.add(part.x[i], part.y[i], part.vx[i], part.vy[i], part.size[i], part.life[i],
+                    part.hue[i], part.shade[i], true);
+            }
+        }
+
+        return merged;
+    }
+
+    // Entities per species, food as species 0
+    int[] speciesCounts() {
+        int[] counts = new int[species+1];
+        for(int i = 0; i < count; i++) counts[World.speciesOf(size[i])]++;
+        return counts;
+    }
+
+    // How many entities of this checkpoint have one of the same size in the other within the tolerance on both axes
+    int matches(Checkpoint other, double tolerance) {
+        UniformGrid grid = new UniformGrid(1);
+        IntList ids = new IntList(), found = new IntList();
+        for(int i = 0; i < other.count; i++) ids.add(i);
+        grid.build(new Positions() {
+            @Override
+            public double x(int id) {
+                return other.x[id];
+            }
+
+            @Override
+            public double y(int id) {
+                return other.y[id];
+            }
+        }, ids, other.width, other.height);
+
+        int matched = 0;
+        for(int i = 0; i < count; i++) {
+            found.clear();
+            grid.query(x[i], y[i], tolerance, found);
+            for(int k = 0; k < found.size(); k++) {
+                if(other.size[found.get(k)] == size[i]) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getSpecies() {
+        return species;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    // Moves primitive arrays to and from a channel in buffer sized pieces
+    private static class Columns {
+
+        private final FileChannel channel;
+        // Little endian matches the common platforms, so the bulk copies need no byte swapping
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Columns(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void write(double[] values) throws IOException {
+            for(int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, room(8));
+                buffer.asDoubleBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 8);
+                i += n;
+            }
+        }
+
+        private void write(int[] values) throws IOException {
+            for(int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, room(4));
+                buffer.asIntBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+        private void write(float[] values) throws IOException {
+            for(int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, room(4));
+                buffer.asFloatBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+        private void write(boolean[] values) throws IOException {
+            for(int i = 0; i < values.length; i++) {
+                room(1);
+                buffer.put((byte)(values[i] ? 1 : 0));
+            }
+        }
+
+        // Flushes when fewer than one value of the given width fits, returns how many values fit
+        private int room(int width) throws IOException {
+            if(buffer.remaining() < width) flush();
+            return buffer.remaining() / width;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void read(double[] values) throws IOException {
+            for(int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, available(8));
+                buffer.asDoubleBuffer().get(values, i, n);
+                buffer.position(buffer.position() + n * 8);
+                i += n;
+            }
+        }
+
+        private void read(int[] values) throws IOException {
+            for(int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, available(4));
+                buffer.asIntBuffer().get(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+        private void read(float[] values) throws IOException {
+            for(int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, available(4));
+                buffer.asFloatBuffer().get(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+        private void read(boolean[] values) throws IOException {
+            for(int i = 0; i < values.length; i++) {
+                available(1);
+                values[i] = buffer.get() != 0;
+            }
+        }
+
+        // Makes sure at least one value of the given width is buffered, returns how many are
+        private int available(int width) throws IOException {
+            if(buffer.remaining() < width) fill(width);
+            return buffer.remaining() / width;
+        }
+
+        // Reads until at least the given number of bytes are buffered, starts with an empty buffer
+        private void fill(int bytes) throws IOException {
+            buffer.compact();
+            while(buffer.position() < bytes) {
+                if(channel.read(buffer) < 0)
+                    throw new IOException("Checkpoint ends early");
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package simulation;
 
-import internal.Boid;
-import internal.Food;
-import internal.quadtree.QuadTree;
-import internal.quadtree.Vector;
+import internal.render.Camera;
+import internal.render.LodRenderer;
 
 import javax.swing.*;
 import java.awt.*;
@@ -11,74 +9,162 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 @SuppressWarnings("All")
 public class Environment extends JPanel {
 
-    private static final int smallestBoid = 3;
+    private static final long serialVersionUID = 1L;
 
-    private int species;
-    private boolean spawn = false;
-    private boolean clear = false;
-    private int spawnSize = smallestBoid;
+    private static final int smallestBoid = World.smallestBoid;
+
+    private volatile boolean spawn = false;
+    private volatile Point mouse = null;
+    private Point drag = null;
+    private volatile int spawnSize = smallestBoid;
 
     private String mode = "Flocking";
-    private final Options options = new Options();
+    private final Options options;
+
+    private final World world;
+    private final ReplayWorld replay;
+    private final RemoteWorld remote;
+    private final SimulationLoop loop;
+    private volatile Recorder recorder = null;
+    private PopulationStats stats = null;
+    private Path checkpointFile = Path.of("boids.checkpoint");
+    private Snapshot recorded = null;
+
+    private volatile Snapshot snapshot = Snapshot.empty;
+    private final LodRenderer lod = new LodRenderer();
+    private ActiveRenderer activeRenderer = null;
+    private volatile boolean showQuads = false;
+    private volatile boolean showInfo = true;
+    private volatile boolean showMetrics = false;
+
+    // The world follows the window size unless given its own, the camera picks what part of it is shown
+    private volatile boolean sizedToWindow = true;
+    private volatile Camera camera = Camera.identity;
 
-    private final Timer timer = new Timer(50, x -> repaint());
-    private final List<List<Boid>> boids = new ArrayList<>();
-    private final List<Boid> boidQueue = new ArrayList<>();
+    public Environment(int species) {
+        this(species, 20);
+    }
 
-    private List<QuadTree> quadTrees = new ArrayList<>();
-    private boolean showQuads = false;
-    private boolean showInfo = true;
+    public Environment(int species, int ticksPerSecond) {
+        this(species, ticksPerSecond, Storage.OBJECTS, Indexing.QUADTREE);
+    }
 
-    public Environment(int species) {
-        this.species = species;
+    public Environment(int species, int ticksPerSecond, Storage storage, Indexing indexing) {
+        this(World.create(storage, indexing, Runtime.getRuntime().availableProcessors(), species, 0, 0), ticksPerSecond);
+    }
+
+    // Shows any world, a ReplayWorld adds playback controls and a RemoteWorld is sent what the camera shows
+    public Environment(World world, int ticksPerSecond) {
+        this.world = world;
+        this.options = new Options(world.getConfig());
+        this.replay = world instanceof ReplayWorld ? (ReplayWorld)world : null;
+        this.remote = world instanceof RemoteWorld ? (RemoteWorld)world : null;
+        this.loop = new SimulationLoop(ticksPerSecond, this::tick, this::publish);
+        loop.setOnFailure(e -> repaint());
+        world.getMetrics().setEnabled(true);
         setBackground(Color.black);
         setFocusable(true);
         add(options);
+        options.sync();
+        mode = options.inFlockingMode() ? "Flocking" : "Ecosystem";
 
-        for(int i = 0; i < species+1; i++)
-            boids.add(new ArrayList<>());
-
-        addMouseListener(new MouseAdapter() {
+        MouseAdapter mouseAdapter = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
-                spawn = true;
+                mouse = e.getPoint();
+                if(SwingUtilities.isLeftMouseButton(e)) spawn = true;
+                else drag = e.getPoint();
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
                 requestFocus();
                 spawn = false;
+                drag = null;
+            }
+
+            // Any button but the left one pans
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                mouse = e.getPoint();
+                if(drag != null) {
+                    moveCamera(camera.pan(e.getX() - drag.x, e.getY() - drag.y));
+                    drag = e.getPoint();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                moveCamera(camera.zoom(Math.pow(1.1, -e.getPreciseWheelRotation()), e.getX(), e.getY()));
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                mouse = e.getPoint();
             }
-        });
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                mouse = null;
+            }
+        };
+        addMouseListener(mouseAdapter);
+        addMouseMotionListener(mouseAdapter);
+        addMouseWheelListener(mouseAdapter);
 
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
+                if(replay != null && replayKey(e.getKeyCode()))
+                    return;
+
                 if(e.getKeyCode() == KeyEvent.VK_SPACE) {
                     options.flip();
-                    boids.forEach(List::clear);
+                    boolean flocking = options.inFlockingMode();
+                    loop.post(() -> {
+                        world.getConfig().flockingMode = flocking;
+                        world.clear();
+                    });
                     spawnSize = smallestBoid;
                     mode = options.inFlockingMode() ? "Flocking" : "Ecosystem";
                 }
 
                 if(e.getKeyCode() == KeyEvent.VK_Q) {
                     showQuads ^= true;
+                    if(activeRenderer != null) activeRenderer.setShowQuads(showQuads);
                 }
 
                 if(e.getKeyCode() == KeyEvent.VK_I) {
                     showInfo ^= true;
                 }
 
-                if(Boid.flockingMode) return;
+                if(e.getKeyCode() == KeyEvent.VK_M) {
+                    showMetrics ^= true;
+                }
+
+                // Fits the whole world in the window, or goes back to one pixel per unit at the top left
+                if(e.getKeyCode() == KeyEvent.VK_F) {
+                    Camera fit = Camera.fit(world.getWidth(), world.getHeight(), getWidth(), getHeight());
+                    moveCamera(camera.getZoom() == fit.getZoom() ? Camera.identity : fit);
+                }
+
+                if(e.getKeyCode() == KeyEvent.VK_C && world.canCheckpoint()) {
+                    loop.post(() -> checkpoint());
+                }
+
+                if(world.getConfig().flockingMode) return;
 
                 int num = getNum(e.getKeyCode());
-                if(num == -1 || num >= boids.size()) return;
+                if(num == -1 || num > world.getSpecies()) return;
                 spawnSize = num + smallestBoid-1;
             }
         });
@@ -102,16 +188,26 @@ public class Environment extends JPanel {
     protected void paintComponent(Graphics graphics) {
         super.paintComponent(graphics);
         Graphics2D g = (Graphics2D)graphics;
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        updateLists();
-        updateBoidLists();
-        simulateBoids(g);
-        spawnBoids();
+        Snapshot snapshot = this.snapshot;
+        Camera camera = this.camera;
+        TickMetrics metrics = world.getMetrics();
+        if(activeRenderer != null) activeRenderer.blit(g);
+        else {
+            long start = metrics.start();
+            lod.draw(g, snapshot, camera, getWidth(), getHeight(), getBackground());
+            metrics.stop(Phase.RENDER, start);
+        }
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        if(showQuads) {
+        if(showQuads && activeRenderer == null) {
             g.setColor(new Color(255, 255, 255, 50));
-            quadTrees.forEach(z -> z.draw(g));
+            snapshot.drawQuads(g, camera.transform());
+        }
+
+        if(!sizedToWindow) {
+            g.setColor(Color.darkGray);
+            g.draw(camera.transform().createTransformedShape(new Rectangle(0, 0, world.getWidth(), world.getHeight())));
         }
 
         if(showInfo) {
@@ -120,78 +216,138 @@ public class Environment extends JPanel {
             g.setFont(font);
 
             int height = (int) (g.getFontMetrics().getHeight() * 1.1);
-            int count = boids.stream().mapToInt(species -> species.size()).sum();
+            int count = snapshot.getCount();
+            if(replay != null) {
+                g.drawString(String.format("Replay: frame %d / %d at %.2fx", replay.getFrame() + 1, replay.getFrames(),
+                    replay.getSpeed()), 10, getHeight() - height*6);
+            }
+            if(remote != null) {
+                g.drawString(String.format("Remote: tick %d, every %d ticks, %d frames received", remote.getTicks(),
+                    remote.getEvery(), remote.getFrames()), 10, getHeight() - height*6);
+            }
+
+            g.drawString(String.format("View: %.2fx at (%d, %d), %d of %d entities visible", camera.getZoom(),
+                (int)camera.getX(), (int)camera.getY(), lod.getVisibleCount(), count), 10, getHeight() - height*5);
+
+            int[] t = lod.getThresholds();
+            g.drawString("Detail: " + lod.getDetail() + " (triangles > " + t[0] + ", lines > " + t[1]
+                + ", pixels > " + t[2] + ")", 10, getHeight() - height*4);
             g.drawString("Selected: " + (spawnSize-smallestBoid+1), 10, getHeight() - height*3);
             g.drawString("Entities: " + count, 10, getHeight() - height * 2);
             g.drawString("Mode: " + mode, 10, getHeight() - height);
         }
+
+        if(showMetrics)
+            drawMetrics(g, metrics);
+
+        Throwable failure = loop.getFailure();
+        if(failure != null) {
+            g.setFont(new Font("TimesRoman", Font.BOLD, 20));
+            g.setColor(Color.red);
+            g.drawString("Simulation stopped: " + failure, 10, g.getFontMetrics().getHeight());
+        }
     }
 
-    private void simulateBoids(Graphics2D g) {
-        boids.forEach(species -> species.forEach(boid ->
-            boid.run(g, getWidth(), getHeight())
-        ));
+    // Phase timings and the last tick's counters in the bottom right corner
+    private void drawMetrics(Graphics2D g, TickMetrics metrics) {
+        g.setFont(new Font("Monospaced", Font.BOLD, 16));
+        g.setColor(Color.white);
+
+        List<String> lines = new ArrayList<>();
+        lines.add("Phase       p50 ms   p99 ms");
+        for(Phase phase : Phase.values())
+            lines.add(String.format("%-10s %7.2f  %7.2f", phase.name().toLowerCase(), metrics.p50(phase), metrics.p99(phase)));
+
+        lines.add(String.format("Births %d  Eaten %d  Starved %d  Food %d", metrics.getBirths(), metrics.getEaten(),
+            metrics.getStarved(), metrics.getFoodSpawns()));
+        double[] neighbours = metrics.getAverageNeighbours();
+        StringBuilder average = new StringBuilder("Neighbours");
+        for(int s = 1; s < neighbours.length; s++)
+            average.append(String.format(" %.1f", neighbours[s]));
+        lines.add(average.toString());
+
+        FontMetrics fm = g.getFontMetrics();
+        int width = lines.stream().mapToInt(fm::stringWidth).max().orElse(0);
+        int height = (int)(fm.getHeight() * 1.1);
+        for(int i = 0; i < lines.size(); i++)
+            g.drawString(lines.get(i), getWidth() - width - 10, getHeight() - height * (lines.size() - i));
     }
 
-    private void updateBoidLists() {
-        List<QuadTree> quadTrees = new ArrayList<>();
-        for(List<Boid> species : boids) {
-            QuadTree qt = new QuadTree(0, 0, getWidth()-1, getHeight()-1, 1);
-            for(Boid b : species) qt.insert(b);
-            quadTrees.add(qt);
-        }
+    private void tick() {
+        if(sizedToWindow) world.resize(getWidth(), getHeight());
+        if(remote != null) view();
+        world.step();
+        spawnBoids();
+        record();
+    }
 
-        for(int i = 1; i < boids.size() - 1; i++) {
-            for(Boid b : boids.get(i)) {
-                Vector p1 = new Vector(b.getPosition().x - 50, b.getPosition().y - 50);
-                Vector p2 = new Vector(b.getPosition().x + 50, b.getPosition().y + 50);
-                b.setPrey(quadTrees.get(i-1).query(p1, p2));
-                b.setFlock(quadTrees.get(i).query(p1, p2));
-                b.setPredators(quadTrees.get(i+1).query(p1, p2));
-            }
-        }
+    // Asks the server for the part of the world the camera shows, once the window has a size
+    private void view() {
+        Camera camera = this.camera;
+        if(getWidth() == 0 || getHeight() == 0)
+            return;
 
-        for(Boid b : boids.get(boids.size()-1)) {
-            Vector p1 = new Vector(b.getPosition().x - 50, b.getPosition().y - 50);
-            Vector p2 = new Vector(b.getPosition().x + 50, b.getPosition().y + 50);
-            b.setPrey(quadTrees.get(boids.size()-2).query(p1, p2));
-            b.setFlock(quadTrees.get(boids.size()-1).query(p1, p2));
+        try {
+            remote.view(camera.getX(), camera.getY(), getWidth() / camera.getZoom(), getHeight() / camera.getZoom());
+        }catch(IOException e) {
+            System.err.println("Could not change the view: " + e.getMessage());
         }
+    }
 
-        this.quadTrees = quadTrees;
+    private void publish() {
+        // A tick that was just recorded has its snapshot already
+        Snapshot recorded = this.recorded;
+        snapshot = recorded != null && recorded.getTick() == world.getTicks() ? recorded : world.snapshot(showQuads);
+        if(activeRenderer == null) repaint();
     }
 
-    private void updateLists() {
-        if(options.inFlockingMode())
+    // Every tick is recorded, including the ones that are not published while the loop catches up
+    private void record() {
+        Recorder recorder = this.recorder;
+        if(recorder == null)
             return;
 
-        boids.forEach(species -> species.removeIf(Boid::isDead));
-        boidQueue.forEach(boid -> boids.get(boid.getSize()-smallestBoid+1).add(boid));
-        boidQueue.clear();
-
-        for(int i = 0; i < species+3 && boids.get(0).size() < 500; i++)
-            boids.get(0).add(new Food(Math.random() * getWidth(), Math.random() * getHeight()));
+        recorded = world.snapshot(showQuads);
+        try {
+            recorder.record(recorded, world.getWidth(), world.getHeight());
+        }catch(IOException e) {
+            System.err.println("Recording stopped: " + e.getMessage());
+            this.recorder = null;
+        }
     }
 
-    private void spawnBoids() {
-        if(spawn) try {
-            boids.get(spawnSize - smallestBoid+1).add(createBoid(getMousePosition().x, getMousePosition().y, spawnSize));
-        }catch(NullPointerException e) { };
+    // Copies the world on the simulation thread between ticks and writes the copy in the background
+    private void checkpoint() {
+        Path file = checkpointFile;
+        world.checkpoint().writeAsync(file).whenComplete((path, error) -> {
+            if(error != null) System.err.println("Checkpoint failed: " + error.getMessage());
+            else System.out.println("Checkpoint written to " + path);
+        });
     }
 
-    private Boid createBoid(double x, double y, int size) {
-        Boid b = new Boid(x, y, size, this);
-//        b.setPrey(getList(size - smallestBoid));
-//        b.setFlock(getList(size - smallestBoid + 1));
-//        b.setPredators(getList(size - smallestBoid + 2));
-        return b;
-    }
+    // Space pauses, left and right halve, double or reverse the speed, home, end and the number keys seek
+    private boolean replayKey(int code) {
+        double speed = replay.getSpeed();
+        switch(code) {
+            case KeyEvent.VK_SPACE : replay.setSpeed(speed == 0 ? 1 : 0); return true;
+            case KeyEvent.VK_RIGHT : replay.setSpeed(speed == 0 ? 1 : speed < 0 ? speed / 2 : speed * 2); return true;
+            case KeyEvent.VK_LEFT : replay.setSpeed(speed == 0 ? -1 : speed > 0 ? speed / 2 : speed * 2); return true;
+            case KeyEvent.VK_HOME : replay.seek(0); return true;
+            case KeyEvent.VK_END : replay.seek(1); return true;
+        }
+
+        int num = getNum(code);
+        if(num == -1)
+            return false;
 
-    private List<Boid> getList(int index) {
-        if(index < 0 || index >= boids.size())
-            return null;
+        replay.seek((num - 1) / 9.0);
+        return true;
+    }
 
-        return boids.get(index);
+    private void spawnBoids() {
+        Point mouse = this.mouse;
+        if(spawn && mouse != null)
+            world.spawn(camera.worldX(mouse.x), camera.worldY(mouse.y), spawnSize);
     }
 
     private int getNum(int code) {
@@ -210,15 +366,72 @@ public class Environment extends JPanel {
         return -1;
     }
 
-    public void addBoid(Boid boid) {
-        boidQueue.add(boid);
+    // Draws batched frames on a render thread instead of inside paintComponent, call before start
+    public void setActiveRendering(boolean active) {
+        activeRenderer = active ? new ActiveRenderer(this, () -> snapshot, () -> camera, lod, world.getMetrics()) : null;
+    }
+
+    // Gives the world a fixed size instead of following the window, call before start
+    public void setWorldSize(int width, int height) {
+        sizedToWindow = false;
+        world.resize(width, height);
+    }
+
+    private void moveCamera(Camera camera) {
+        this.camera = camera;
+        if(activeRenderer == null) repaint();
+    }
+
+    // Entity counts above which the renderer falls back to triangles, lines and pixels
+    public void setDetailThresholds(int triangles, int lines, int pixels) {
+        lod.setThresholds(triangles, lines, pixels);
+    }
+
+    // Records every published frame to the given recorder until stopped, call before start
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Publishes a sample of the population after every tick until stopped, call before start
+    public void setStats(PopulationStats stats) {
+        this.stats = stats;
+        world.setStats(stats);
+    }
+
+    // Where the C key writes checkpoints
+    public void setCheckpointFile(Path file) {
+        this.checkpointFile = file;
     }
 
     public void start() {
-        timer.start();
+        world.getMetrics().register("window");
+        loop.start();
+        if(activeRenderer != null) activeRenderer.start();
     }
 
     public void stop() {
-        timer.stop();
+        loop.stop();
+        if(activeRenderer != null) activeRenderer.stop();
+        world.close();
+
+        Recorder recorder = this.recorder;
+        this.recorder = null;
+        if(recorder != null) {
+            try {
+                recorder.close();
+            }catch(IOException e) {
+                System.err.println("Could not finish recording: " + e.getMessage());
+            }
+        }
+
+        PopulationStats stats = this.stats;
+        this.stats = null;
+        if(stats != null) {
+            try {
+                stats.close();
+            }catch(IOException e) {
+                System.err.println("Could not finish population statistics: " + e.getMessage());
+            }
+        }
     }
 }
\ No newline at end of file
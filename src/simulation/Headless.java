@@ -0,0 +1,402 @@
+package simulation;
+
+import internal.Config;
+import internal.FoodWeb;
+import internal.Steering;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+// Runs a world from the command line as fast as the CPU allows, without any display
+@SuppressWarnings("All")
+public class Headless {
+
+    private String mode = "flocking";
+    private int species = 5;
+    private int population = 200;
+    private int width = 1920;
+    private int height = 1080;
+    private int ticks = 1000;
+    private int report = 100;
+    private Storage storage = Storage.OBJECTS;
+    private Indexing indexing = Indexing.QUADTREE;
+    private int threads = 1;
+    private boolean metrics = false;
+    private Path record = null;
+    private Path restore = null;
+    private Path checkpoint = null;
+    private String web = null;
+    private Path stats = null;
+    private Integer serve = null;
+    private Integer nearest = null;
+    private Double openingAngle = null;
+    private Double skin = null;
+
+    // Sharded runs, see runShards and runShard
+    private int shards = 1;
+    private int shard = -1;
+    private int[] ports = null;
+    private boolean verify = false;
+
+    // Parameter sweeps, see Sweep
+    private final List<String> vary = new ArrayList<>();
+    private int repeats = 3;
+    private int parallel = Runtime.getRuntime().availableProcessors();
+
+    public Headless(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--headless" : break;
+                case "--mode" : mode = args[++i]; break;
+                case "--species" : species = Integer.parseInt(args[++i]); break;
+                case "--population" : population = Integer.parseInt(args[++i]); break;
+                case "--width" : width = Integer.parseInt(args[++i]); break;
+                case "--height" : height = Integer.parseInt(args[++i]); break;
+                case "--ticks" : ticks = Integer.parseInt(args[++i]); break;
+                case "--report" : report = Integer.parseInt(args[++i]); break;
+                case "--storage" : storage = Storage.valueOf(args[++i].toUpperCase()); break;
+                case "--index" : indexing = Indexing.valueOf(args[++i].toUpperCase()); break;
+                case "--threads" : threads = Integer.parseInt(args[++i]); break;
+                case "--metrics" : metrics = true; break;
+                case "--record" : record = Path.of(args[++i]); break;
+                case "--restore" : restore = Path.of(args[++i]); break;
+                case "--checkpoint" : checkpoint = Path.of(args[++i]); break;
+                case "--web" : web = args[++i]; break;
+                case "--stats" : stats = Path.of(args[++i]); break;
+                case "--serve" : serve = Integer.parseInt(args[++i]); break;
+                case "--nearest" : nearest = Integer.parseInt(args[++i]); break;
+                case "--opening-angle" : openingAngle = Double.parseDouble(args[++i]); break;
+                case "--skin" : skin = Double.parseDouble(args[++i]); break;
+                case "--shards" : shards = Integer.parseInt(args[++i]); break;
+                case "--shard" : shard = Integer.parseInt(args[++i]); break;
+                case "--ports" : ports = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--verify" : verify = true; break;
+                case "--vary" : vary.add(args[++i]); break;
+                case "--repeats" : repeats = Integer.parseInt(args[++i]); break;
+                case "--parallel" : parallel = Integer.parseInt(args[++i]); break;
+                case "--simd" : Steering.vectorised = true; break;
+                default : throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    public void run() throws IOException {
+        if(shard >= 0) {
+            runShard();
+            return;
+        }
+
+        if(shards > 1 && stats != null)
+            throw new IllegalArgumentException("--stats is not supported with --shards");
+        if(shards > 1 && serve != null)
+            throw new IllegalArgumentException("--serve is not supported with --shards");
+        // Only the array kernels group flockmates or keep neighbour lists, and shards always run on arrays
+        if(storage == Storage.OBJECTS && shards <= 1 && (openingAngle != null || skin != null))
+            throw new IllegalArgumentException("--opening-angle and --skin need --storage double or float");
+        if(!vary.isEmpty()) {
+            runSweep();
+            return;
+        }
+
+        try(World world = restore != null ? restoreWorld() : createWorld()) {
+            if(shards > 1) runShards(world);
+            else simulate(world);
+        }
+    }
+
+    // A plain run of the world in this process
+    private void simulate(World world) throws IOException {
+        if(metrics) {
+            world.getMetrics().setEnabled(true);
+            world.getMetrics().register("headless");
+        }
+
+        // Verifying lists turns the noise off and runs the same start again with fresh queries every tick
+        Checkpoint initial = null;
+        if(verify && skin != null) {
+            world.getConfig().noiseWeight = 0;
+            initial = world.checkpoint();
+        }
+
+        Recorder recorder = record != null ? new Recorder(record, world.getSpecies()) : null;
+        PopulationStats populationStats = stats != null ? new PopulationStats(stats, world.getSpecies()) : null;
+        world.setStats(populationStats);
+        ViewServer server = serve != null ? new ViewServer(serve) : null;
+        world.setViewers(server);
+        if(server != null) System.out.println("Serving viewers on port " + server.getPort());
+
+        long start = System.nanoTime();
+        long last = start;
+        for(int done = 0; done < ticks; ) {
+            int n = Math.min(report, ticks - done);
+            if(recorder == null) world.step(n);
+            else {
+                for(int i = 0; i < n; i++) {
+                    world.step();
+                    recorder.record(world.snapshot(false), world.getWidth(), world.getHeight());
+                }
+            }
+            done += n;
+
+            long now = System.nanoTime();
+            System.out.printf(Locale.ROOT, "tick %d  entities %d  %.1f ticks/s%s%n",
+                world.getTicks(), world.getCount(), n / ((now - last) / 1e9), server != null ? "  viewers " + server.getViewers() : "");
+            if(metrics) printMetrics(world.getMetrics());
+            last = now;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%d ticks in %.2f s (%.1f ticks/s)%n", ticks, seconds, ticks / seconds);
+
+        if(checkpoint != null) {
+            long t = System.nanoTime();
+            Checkpoint c = world.checkpoint();
+            c.write(checkpoint);
+            System.out.printf(Locale.ROOT, "Checkpoint of %d entities written to %s in %.0f ms%n",
+                c.getCount(), checkpoint, (System.nanoTime() - t) / 1e6);
+        }
+
+        if(populationStats != null) {
+            populationStats.close();
+            System.out.printf(Locale.ROOT, "Statistics of %d ticks written to %s, %d dropped%n",
+                populationStats.getPublished(), stats, populationStats.getDropped());
+        }
+
+        if(server != null) {
+            System.out.printf(Locale.ROOT, "Served %d viewers at the end, %d frames skipped%n", server.getViewers(), server.getSkipped());
+            server.close();
+        }
+
+        if(recorder != null) {
+            recorder.close();
+            System.out.printf(Locale.ROOT, "Recorded %d frames to %s (%d bytes)%n",
+                recorder.getFrames(), record, Files.size(record));
+        }
+
+        if(initial != null) {
+            try(World reference = initial.restore(storage, indexing, threads)) {
+                configure(reference.getConfig());
+                reference.getConfig().neighbourSkin = 0;
+                verify(reference, world.checkpoint(), "listed");
+            }
+        }
+    }
+
+    // Writes the starting world to a file, runs every strip of it in a process of its own and merges
+    // what they end with. Verifying turns the noise off and runs the same start here to compare with.
+    private void runShards(World world) throws IOException {
+        Shard.checkStrips(world.getWidth(), shards);
+        if(verify) world.getConfig().noiseWeight = 0;
+
+        Path dir = Files.createTempDirectory("boids-shards");
+        Path initial = dir.resolve("initial.checkpoint");
+        List<Path> parts = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+        try {
+            world.checkpoint().write(initial);
+
+            int[] ports = freePorts(shards);
+            String portList = Arrays.stream(ports).mapToObj(String::valueOf).collect(Collectors.joining(","));
+            Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+            Storage shardStorage = storage == Storage.OBJECTS ? Storage.DOUBLE : storage;
+
+            long start = System.nanoTime();
+            for(int i = 0; i < shards; i++) {
+                Path part = dir.resolve("shard-" + i + ".checkpoint");
+                parts.add(part);
+
+                List<String> command = new ArrayList<>(Arrays.asList(java.toString(), "-cp", System.getProperty("java.class.path"),
+                    Headless.class.getName(), "--shard", String.valueOf(i), "--shards", String.valueOf(shards),
+                    "--ports", portList, "--mode", mode, "--restore", initial.toString(), "--checkpoint", part.toString(),
+                    "--ticks", String.valueOf(ticks), "--report", String.valueOf(report), "--storage", shardStorage.name(),
+                    "--index", indexing.name(), "--threads", String.valueOf(threads)));
+                if(metrics) command.add("--metrics");
+                if(openingAngle != null) command.addAll(Arrays.asList("--opening-angle", String.valueOf(openingAngle)));
+                if(skin != null) command.addAll(Arrays.asList("--skin", String.valueOf(skin)));
+                if(Steering.vectorised) {
+                    command.addAll(1, Arrays.asList("--add-modules", "jdk.incubator.vector"));
+                    command.add("--simd");
+                }
+                processes.add(new ProcessBuilder(command).inheritIO().start());
+            }
+
+            for(int i = 0; i < shards; i++) {
+                int exit = processes.get(i).waitFor();
+                if(exit != 0) throw new IOException("Shard " + i + " failed with exit code " + exit);
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            List<Checkpoint> results = new ArrayList<>();
+            for(Path part : parts) results.add(Checkpoint.read(part));
+            Checkpoint merged = Checkpoint.merge(results);
+            System.out.printf(Locale.ROOT, "%d ticks over %d shards in %.2f s (%.1f ticks/s), %d entities%n",
+                ticks, shards, seconds, ticks / seconds, merged.getCount());
+
+            if(checkpoint != null) merged.write(checkpoint);
+            if(verify) {
+                try(World reference = Checkpoint.read(initial).restore(shardStorage, indexing, threads)) {
+                    configure(reference.getConfig());
+                    verify(reference, merged, "sharded");
+                }
+            }
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shards", e);
+        } finally {
+            // A shard that failed leaves its neighbours waiting on a connection that will never come
+            processes.forEach(Process::destroy);
+            for(Path part : parts) Files.deleteIfExists(part);
+            Files.deleteIfExists(initial);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Every world of the sweep starts the same way, from the checkpoint if given or populated afresh
+    private void runSweep() throws IOException {
+        if(shards > 1)
+            throw new IllegalArgumentException("--vary is not supported with --shards");
+
+        Checkpoint start = restore != null ? Checkpoint.read(restore) : null;
+        Sweep sweep = new Sweep(() -> start != null ? restoreWorld(start) : createWorld(), ticks, repeats, parallel);
+        for(String spec : vary)
+            sweep.vary(spec);
+
+        long t = System.nanoTime();
+        sweep.run(System.out);
+        System.err.printf(Locale.ROOT, "Sweep finished in %.1f s%n", (System.nanoTime() - t) / 1e9);
+    }
+
+    // One strip of a sharded run, started by runShards
+    private void runShard() throws IOException {
+        World world = Checkpoint.read(restore).restore(storage == Storage.OBJECTS ? Storage.DOUBLE : storage, indexing, threads);
+        configure(world.getConfig());
+        if(metrics) world.getMetrics().setEnabled(true);
+
+        try(world; Shard s = new Shard((ArrayWorld)world, shard, shards, ports)) {
+            long last = System.nanoTime();
+            for(int done = 0; done < ticks; ) {
+                int n = Math.min(report, ticks - done);
+                for(int i = 0; i < n; i++) s.step();
+                done += n;
+
+                long now = System.nanoTime();
+                System.out.printf(Locale.ROOT, "shard %d  tick %d  entities %d  exchange %.2f ms/tick  %.1f ticks/s%n",
+                    shard, world.getTicks(), s.getCount(), s.takeExchangeNanos() / 1e6 / n, n / ((now - last) / 1e9));
+                if(metrics) printMetrics(world.getMetrics());
+                last = now;
+            }
+
+            s.finish();
+            world.checkpoint().write(checkpoint);
+        }
+    }
+
+    // Runs the same start the plain way in this process and compares it with a result, sharded or with lists.
+    // Counts per species always, and when flocking, which has no randomness left with the noise off, how many
+    // entities of the reference have a twin in the result at the same place. A flocking result that differs in
+    // either fails the run.
+    private void verify(World reference, Checkpoint result, String label) {
+        reference.step(ticks);
+        Checkpoint expected = Checkpoint.merge(List.of(reference.checkpoint()));
+        int[] expectedCounts = expected.speciesCounts(), resultCounts = result.speciesCounts();
+        System.out.println("Reference species counts " + Arrays.toString(expectedCounts)
+            + ", " + label + " " + Arrays.toString(resultCounts));
+        if(!reference.getConfig().flockingMode)
+            return;
+
+        double tolerance = 0.01;
+        int matched = expected.matches(result, tolerance);
+        System.out.printf(Locale.ROOT, "%d of %d entities (%.2f%%) match a %s entity within %.2f%n",
+            matched, expected.count, 100.0 * matched / Math.max(1, expected.count), label, tolerance);
+
+        if(matched != expected.count || !Arrays.equals(expectedCounts, resultCounts))
+            throw new IllegalStateException("The " + label + " run does not match the reference, " + (expected.count - matched)
+                + " entities differ");
+    }
+
+    // Closed again straight away, so another process could take one before the shards do, which is unlikely
+    static int[] freePorts(int n) throws IOException {
+        List<ServerSocketChannel> channels = new ArrayList<>();
+        try {
+            int[] ports = new int[n];
+            for(int i = 0; i < n; i++) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channels.add(channel);
+                channel.bind(new InetSocketAddress("localhost", 0));
+                ports[i] = ((InetSocketAddress)channel.getLocalAddress()).getPort();
+            }
+            return ports;
+        } finally {
+            for(ServerSocketChannel channel : channels) channel.close();
+        }
+    }
+
+    private void printMetrics(TickMetrics metrics) {
+        StringBuilder line = new StringBuilder("  ");
+        for(Phase phase : Phase.values()) {
+            if(phase == Phase.RENDER) continue;
+            line.append(String.format(Locale.ROOT, "%s %.2f/%.2f ms  ", phase.name().toLowerCase(),
+                metrics.p50(phase), metrics.p99(phase)));
+        }
+
+        line.append(String.format(Locale.ROOT, "births %d  eaten %d  starved %d  food %d  neighbours",
+            metrics.getBirths(), metrics.getEaten(), metrics.getStarved(), metrics.getFoodSpawns()));
+        double[] neighbours = metrics.getAverageNeighbours();
+        for(int s = 1; s < neighbours.length; s++)
+            line.append(String.format(Locale.ROOT, " %.1f", neighbours[s]));
+
+        System.out.println(line);
+    }
+
+    // The checkpoint decides the mode and species, storage, index and threads still come from the options,
+    // and so do the flocking settings and the food web if given
+    private World restoreWorld() throws IOException {
+        long t = System.nanoTime();
+        Checkpoint c = Checkpoint.read(restore);
+        World world = restoreWorld(c);
+        System.out.printf(Locale.ROOT, "Restored %d entities at tick %d from %s in %.0f ms%n",
+            c.getCount(), c.getTicks(), restore, (System.nanoTime() - t) / 1e6);
+        return world;
+    }
+
+    private World restoreWorld(Checkpoint c) {
+        World world = c.restore(storage, indexing, threads);
+        configure(world.getConfig());
+        if(web != null) world.setFoodWeb(FoodWeb.parse(c.getSpecies(), web));
+        return world;
+    }
+
+    public World createWorld() {
+        World world = World.create(storage, indexing, threads, species, width, height);
+        world.getConfig().flockingMode = !mode.equalsIgnoreCase("ecosystem");
+        configure(world.getConfig());
+        if(web != null) world.setFoodWeb(FoodWeb.parse(species, web));
+        int sizes = world.getConfig().flockingMode ? 1 : species;
+        for(int s = 0; s < sizes; s++) {
+            for(int i = 0; i < population; i++)
+                world.spawn(Math.random() * width, Math.random() * height, World.smallestBoid + s);
+        }
+
+        return world;
+    }
+
+    // Flocking settings given as options, over those of a restored checkpoint
+    private void configure(Config config) {
+        if(nearest != null) config.nearestFlockmates = nearest;
+        if(openingAngle != null) config.openingAngle = openingAngle;
+        if(skin != null) config.neighbourSkin = skin;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        new Headless(args).run();
+    }
+}
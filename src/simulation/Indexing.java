@@ -0,0 +1,28 @@
+package simulation;
+
+import internal.Boid;
+import internal.quadtree.LinearQuadTreeIndex;
+import internal.quadtree.QuadTreeIndex;
+import internal.spatial.NeighbourIndex;
+import internal.spatial.UniformGrid;
+
+// Which spatial index a world uses to find neighbour candidates
+public enum Indexing {
+
+    // A fresh QuadTree with capacity one per species every tick
+    QUADTREE,
+
+    // A uniform grid with cells as large as the view range, rebuilt in linear time
+    GRID,
+
+    // A LinearQuadTree sorted by Morton key, with leaves of up to 32 entities at most 10 levels down
+    LINEAR;
+
+    public NeighbourIndex create() {
+        switch(this) {
+            case GRID : return new UniformGrid(Boid.viewRange);
+            case LINEAR : return new LinearQuadTreeIndex(32, 10);
+            default : return new QuadTreeIndex();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package simulation;
+
+import internal.Boid;
+import internal.Food;
+import internal.FoodWeb;
+import internal.Steering;
+import internal.spatial.IntList;
+import internal.spatial.KNearest;
+import internal.spatial.NearestFilter;
+import internal.spatial.NeighbourIndex;
+import internal.spatial.Positions;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import static internal.spatial.UniformGrid.wrap;
+
+// World backed by one Boid object per entity
+@SuppressWarnings("All")
+public class ObjectWorld extends World {
+
+    private final List<List<Boid>> boids = new ArrayList<>();
+    private final List<Boid> boidQueue = new ArrayList<>();
+    private final List<Boid> deaths = new ArrayList<>();
+
+    // Removed boids and food kept for reuse, so churn allocates nothing once the pools have filled
+    private final List<Boid> boidPool = new ArrayList<>();
+    private final List<Food> foodPool = new ArrayList<>();
+
+    // Every entity in one index, the species of a neighbour comes from its size
+    private final List<Boid> all = new ArrayList<>();
+    private final Positions positions = new BoidPositions(all);
+    private final NeighbourIndex index;
+    private final IntList ids = new IntList();
+    private final IntList query = new IntList();
+    private final Steering steering = new Steering(config);
+
+    // The nearest visible flockmates when flocking topologically, and the boid they are found for
+    private final boolean[] present;
+    private final boolean[] flockmatesOnly;
+    private final KNearest nearest = new KNearest(16);
+    private Boid self;
+    private int selfSpecies;
+    private final NearestFilter flockmates = (id, dx, dy) -> {
+        Boid other = all.get(id);
+        return other != self && (web.relation(selfSpecies, speciesOf(other.getSize())) & FoodWeb.flock) != 0
+            && Steering.sees(dx, dy, self.getVelocity().x, self.getVelocity().y);
+    };
+
+    public ObjectWorld(int species, int width, int height, Indexing indexing) {
+        super(species, width, height, indexing);
+
+        this.index = indexing.create();
+        this.present = new boolean[species+1];
+        this.flockmatesOnly = new boolean[species+1];
+        for(int i = 0; i < species+1; i++)
+            boids.add(new ArrayList<>());
+    }
+
+    @Override
+    public void step() {
+        long start = metrics.start();
+        updateLists();
+        metrics.stop(Phase.LISTS, start);
+
+        updateBoidLists();
+
+        start = metrics.start();
+        simulateBoids();
+        metrics.stop(Phase.STEERING, start);
+
+        ticks++;
+        endTick();
+    }
+
+    private void simulateBoids() {
+        for(List<Boid> species : boids) {
+            for(int i = 0; i < species.size(); i++)
+                species.get(i).run(steering, width, height);
+        }
+    }
+
+    private void updateBoidLists() {
+        long start = metrics.start();
+        all.clear();
+        ids.clear();
+        for(List<Boid> species : boids) {
+            for(int j = 0; j < species.size(); j++) {
+                ids.add(all.size());
+                all.add(species.get(j));
+            }
+        }
+        index.build(positions, ids, width, height);
+        for(int s = 0; s < boids.size(); s++)
+            present[s] = !boids.get(s).isEmpty();
+        findFlockmatesOnly(present, flockmatesOnly);
+        metrics.stop(Phase.INDEX, start);
+
+        start = metrics.start();
+        for(int i = 1; i < boids.size(); i++) {
+            List<Boid> species = boids.get(i);
+            for(int j = 0; j < species.size(); j++)
+                query(i, species.get(j));
+        }
+        metrics.stop(Phase.QUERY, start);
+    }
+
+    // One query for every species, each neighbour goes to the lists the food web puts it in.
+    // Flocking topologically keeps only the nearest visible flockmates, see Kernels.run.
+    private void query(int species, Boid b) {
+        List<Boid> prey = b.getPrey(), flock = b.getFlock(), predators = b.getPredators();
+        prey.clear();
+        flock.clear();
+        predators.clear();
+
+        int k = config.nearestFlockmates;
+        double x = b.getPosition().x, y = b.getPosition().y;
+        if(k > 0) {
+            nearest.reset(k);
+            self = b;
+            selfSpecies = species;
+        }
+
+        query.clear();
+        if(k > 0 && flockmatesOnly[species]) index.nearest(x, y, Boid.viewRange, flockmates, nearest);
+        else index.query(x, y, Boid.viewRange, query);
+
+        for(int i = 0; i < query.size(); i++) {
+            Boid other = all.get(query.get(i));
+            int relation = web.relation(species, speciesOf(other.getSize()));
+            if((relation & FoodWeb.flock) != 0) {
+                if(k == 0) flock.add(other);
+                else if(other != b) {
+                    double dx = wrap(other.getPosition().x - x, width), dy = wrap(other.getPosition().y - y, height);
+                    if(Steering.sees(dx, dy, b.getVelocity().x, b.getVelocity().y)) nearest.offer(query.get(i), dx*dx + dy*dy);
+                }
+            }
+            if((relation & FoodWeb.prey) != 0) prey.add(other);
+            if((relation & FoodWeb.predator) != 0) predators.add(other);
+        }
+
+        if(k > 0) {
+            for(int i = 0; i < nearest.size(); i++)
+                flock.add(all.get(nearest.get(i)));
+        }
+
+        metrics.neighbours(species, prey.size() + flock.size() + predators.size(), 1);
+    }
+
+    // Costs O(births + deaths): the dead are swapped out of their lists and kept for reuse
+    private void updateLists() {
+        if(config.flockingMode)
+            return;
+
+        for(Boid b : deaths)
+            remove(b);
+        deaths.clear();
+
+        for(Boid boid : boidQueue)
+            insert(boids.get(speciesOf(boid.getSize())), boid);
+        boidQueue.clear();
+
+        for(int i = 0; i < species+3 && boids.get(0).size() < 500; i++) {
+            insert(boids.get(0), obtainFood(Math.random() * width, Math.random() * height));
+            metrics.foodSpawned();
+        }
+    }
+
+    private static void insert(List<Boid> list, Boid b) {
+        b.setSlot(list.size());
+        list.add(b);
+    }
+
+    // Moves the last boid of the list into the slot of the removed one
+    private void remove(Boid b) {
+        List<Boid> list = boids.get(speciesOf(b.getSize()));
+        Boid last = list.remove(list.size()-1);
+        if(last != b) {
+            list.set(b.getSlot(), last);
+            last.setSlot(b.getSlot());
+        }
+
+        b.setSlot(-1);
+        release(b);
+    }
+
+    private void release(Boid b) {
+        if(b instanceof Food) foodPool.add((Food)b);
+        else boidPool.add(b);
+    }
+
+    private Boid obtain(double x, double y, int size) {
+        if(boidPool.isEmpty())
+            return new Boid(x, y, size, this);
+
+        Boid b = boidPool.remove(boidPool.size()-1);
+        b.reset(x, y, size);
+        return b;
+    }
+
+    private Food obtainFood(double x, double y) {
+        if(foodPool.isEmpty())
+            return new Food(x, y);
+
+        Food f = foodPool.remove(foodPool.size()-1);
+        f.reset(x, y);
+        return f;
+    }
+
+    @Override
+    public Snapshot snapshot(boolean withQuads) {
+        Path2D quads = null;
+        if(withQuads) {
+            quads = new Path2D.Double();
+            index.outline(quads);
+        }
+
+        Snapshot snapshot = new Snapshot(getCount(), ticks, quads);
+        boids.forEach(species -> species.forEach(snapshot::add));
+        return snapshot;
+    }
+
+    @Override
+    public boolean canCheckpoint() {
+        return true;
+    }
+
+    // Births waiting for the next tick are stored at the end of their species, which is where they will be added
+    @Override
+    public Checkpoint checkpoint() {
+        Checkpoint checkpoint = new Checkpoint(species, web, config, width, height, ticks, getCount() + boidQueue.size());
+        for(int i = 0; i < boids.size(); i++) {
+            boids.get(i).forEach(b -> add(checkpoint, b));
+            for(Boid b : boidQueue) {
+                if(speciesOf(b.getSize()) == i) add(checkpoint, b);
+            }
+        }
+
+        return checkpoint;
+    }
+
+    private static void add(Checkpoint checkpoint, Boid b) {
+        checkpoint.add(b.getPosition().x, b.getPosition().y, b.getVelocity().x, b.getVelocity().y, b.getSize(),
+            b.getLife(), b.getHue(), b.getShade(), !b.isDead());
+    }
+
+    @Override
+    void load(Checkpoint c) {
+        clear();
+        for(int i = 0; i < c.count; i++) {
+            Boid b = c.size[i] == 0
+                ? new Food(c.x[i], c.y[i], !c.alive[i])
+                : new Boid(c.x[i], c.y[i], c.vx[i], c.vy[i], c.size[i], c.life[i], c.hue[i], c.shade[i], !c.alive[i], this);
+            insert(boids.get(speciesOf(c.size[i])), b);
+            if(!c.alive[i]) deaths.add(b);
+        }
+    }
+
+    @Override
+    public void spawn(double x, double y, int size) {
+        insert(boids.get(speciesOf(size)), obtain(x, y, size));
+    }
+
+    // Queues a newborn, it joins its species at the start of the next tick
+    public void birth(double x, double y, int size) {
+        boidQueue.add(obtain(x, y, size));
+        metrics.birth();
+    }
+
+    // Called by a boid as it catches another, the prey is removed at the start of the next tick
+    public void eaten(Boid boid) {
+        deaths.add(boid);
+        if(boid.getSize() > 0) metrics.eaten();
+    }
+
+    // Called by a boid as its life runs out, it is removed at the start of the next tick
+    public void starved(Boid boid) {
+        deaths.add(boid);
+        metrics.starved();
+    }
+
+    @Override
+    public void clear() {
+        boids.forEach(species -> {
+            species.forEach(this::release);
+            species.clear();
+        });
+        boidQueue.forEach(this::release);
+        boidQueue.clear();
+        deaths.clear();
+    }
+
+    @Override
+    public int getCount() {
+        return boids.stream().mapToInt(species -> species.size()).sum();
+    }
+
+    // Newborns count from the tick they were born in, though they only join their species at the next
+    @Override
+    public long census(int[] population) {
+        long life = 0;
+        for(int s = 0; s < boids.size(); s++) {
+            List<Boid> list = boids.get(s);
+            for(int i = 0; i < list.size(); i++) {
+                Boid b = list.get(i);
+                if(b.isDead())
+                    continue;
+
+                population[s]++;
+                if(s > 0) life += b.getLife();
+            }
+        }
+
+        for(Boid b : boidQueue) {
+            population[speciesOf(b.getSize())]++;
+            life += b.getLife();
+        }
+
+        return life;
+    }
+
+    private static class BoidPositions implements Positions {
+
+        private final List<Boid> boids;
+
+        private BoidPositions(List<Boid> boids) {
+            this.boids = boids;
+        }
+
+        @Override
+        public double x(int id) {
+            return boids.get(id).getPosition().x;
+        }
+
+        @Override
+        public double y(int id) {
+            return boids.get(id).getPosition().y;
+        }
+    }
+}
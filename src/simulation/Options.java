@@ -1,6 +1,6 @@
 package simulation;
 
-import internal.Boid;
+import internal.Config;
 
 import javax.swing.*;
 import javax.swing.plaf.basic.BasicSliderUI;
@@ -9,11 +9,17 @@ import java.awt.*;
 @SuppressWarnings("All")
 public class Options extends JPanel {
 
+    private static final long serialVersionUID = 1L;
+
     // Constants
-    private static final double separationWeight = Boid.separationWeight;
-    private static final double alignmentWeight = Boid.alignmentWeight;
-    private static final double cohesionWeight = Boid.cohesionWeight;
-    //private static final double noiseWeight = Boid.noiseWeight;
+    private static final Config defaults = new Config();
+    private static final double separationWeight = defaults.separationWeight;
+    private static final double alignmentWeight = defaults.alignmentWeight;
+    private static final double cohesionWeight = defaults.cohesionWeight;
+    //private static final double noiseWeight = defaults.noiseWeight;
+
+    // The settings of the world the sliders control
+    private final Config config;
 
     // Labels
     private final JLabel sLabel = new JLabel("Separation");
@@ -21,16 +27,21 @@ public class Options extends JPanel {
     private final JLabel cLabel = new JLabel("Cohesion");
     //private final JLabel nLabel = new JLabel("Noise");
 
-    // Sliders
-    private final JSlider sSlider = new JSlider(0, 50, (int) (separationWeight * 10));
-    private final JSlider aSlider = new JSlider(0, 50, (int) (alignmentWeight * 10));
-    private final JSlider cSlider = new JSlider(0, 50, (int) (cohesionWeight * 10));
-    //private final JSlider nSlider = new JSlider(0, 50, (int) (noiseWeight * 10));
+    // Sliders, set from the world's settings in the constructor
+    private final JSlider sSlider = new JSlider(0, 50, 0);
+    private final JSlider aSlider = new JSlider(0, 50, 0);
+    private final JSlider cSlider = new JSlider(0, 50, 0);
+    //private final JSlider nSlider = new JSlider(0, 50, 0);
 
     // Current mode
     private boolean flocking = true;
 
-    public Options() {
+    // Set while the sliders follow the settings, so they do not write their rounded values back
+    private boolean following = false;
+
+    public Options(Config config) {
+        this.config = config;
+        follow();
         setBackground(new Color(0,0,0,0));
 
         Font font = new Font("TimesRoman", Font.BOLD, 15);
@@ -48,10 +59,10 @@ public class Options extends JPanel {
         cSlider.setUI(new CustomSliderUI(cSlider));
         //nSlider.setUI(new CustomSliderUI(nSlider));
 
-        sSlider.addChangeListener(e -> Boid.separationWeight = sSlider.getValue()/10.0);
-        aSlider.addChangeListener(e -> Boid.alignmentWeight = aSlider.getValue()/10.0);
-        cSlider.addChangeListener(e -> Boid.cohesionWeight = cSlider.getValue()/10.0);
-        //nSlider.addChangeListener(e -> Boid.noiseWeight = nSlider.getValue()/10.0);
+        sSlider.addChangeListener(e -> { if(!following) config.separationWeight = sSlider.getValue()/10.0; });
+        aSlider.addChangeListener(e -> { if(!following) config.alignmentWeight = aSlider.getValue()/10.0; });
+        cSlider.addChangeListener(e -> { if(!following) config.cohesionWeight = cSlider.getValue()/10.0; });
+        //nSlider.addChangeListener(e -> { if(!following) config.noiseWeight = nSlider.getValue()/10.0; });
 
         add(sLabel);
         add(sSlider);
@@ -65,13 +76,40 @@ public class Options extends JPanel {
         flocking();
     }
 
+    // Switches the controls to the other mode, the world itself is switched on the simulation thread by the caller.
+    // Going to the ecosystem puts the weights back to their defaults.
     public void flip() {
         flocking ^= true;
-        Boid.flockingMode = flocking;
+        if(!flocking) {
+            config.separationWeight = separationWeight;
+            config.alignmentWeight = alignmentWeight;
+            config.cohesionWeight = cohesionWeight;
+            //config.noiseWeight = noiseWeight;
+            follow();
+        }
+
         if(flocking) flocking();
         else ecosystem();
     }
 
+    // Matches the controls to a mode and weights set elsewhere, such as by a restored checkpoint, leaving both be
+    public void sync() {
+        follow();
+        flocking = config.flockingMode;
+        if(flocking) flocking();
+        else ecosystem();
+    }
+
+    // Moves the sliders to the weights in the settings
+    private void follow() {
+        following = true;
+        sSlider.setValue((int)Math.round(config.separationWeight*10));
+        aSlider.setValue((int)Math.round(config.alignmentWeight*10));
+        cSlider.setValue((int)Math.round(config.cohesionWeight*10));
+        //nSlider.setValue((int)Math.round(config.noiseWeight*10));
+        following = false;
+    }
+
     private void flocking() {
         sLabel.setVisible(true);
         sSlider.setVisible(true);
@@ -84,16 +122,6 @@ public class Options extends JPanel {
     }
 
     private void ecosystem() {
-        Boid.separationWeight = separationWeight;
-        Boid.alignmentWeight = alignmentWeight;
-        Boid.cohesionWeight = cohesionWeight;
-        //Boid.noiseWeight = noiseWeight;
-
-        sSlider.setValue((int)(separationWeight*10));
-        aSlider.setValue((int)(alignmentWeight*10));
-        cSlider.setValue((int)(cohesionWeight*10));
-        //nSlider.setValue((int)(noiseWeight*10));
-
         sLabel.setVisible(false);
         sSlider.setVisible(false);
         aLabel.setVisible(false);
@@ -0,0 +1,6 @@
+package simulation;
+
+// The parts of a tick and of a frame that are timed separately
+public enum Phase {
+    LISTS, INDEX, QUERY, STEERING, RENDER
+}
@@ -0,0 +1,172 @@
+package simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Appends one line of population statistics per tick to a CSV file without ever holding up the simulation.
+// The simulation thread writes each tick's sample into the next free slot of a fixed ring and moves on, and
+// a writer thread of its own drains the ring into the file. Neither side takes a lock: each only advances
+// its own end of the ring. If the writer falls a whole ring behind, say on a stalled disk, samples are
+// dropped and counted rather than making the simulation wait.
+//
+// Columns: tick, births, deaths by predation and by starvation during the tick, the mean life left in
+// the living boids, the amount of food and the living boids of every species, all after the tick.
+@SuppressWarnings("All")
+public class PopulationStats implements AutoCloseable {
+
+    private static final int capacity = 1 << 14;
+    private static final long idleNanos = 10_000_000;
+
+    private static final int tick = 0;
+    private static final int births = 1;
+    private static final int eaten = 2;
+    private static final int starved = 3;
+    private static final int meanLife = 4;
+    private static final int food = 5;
+    private static final int firstSpecies = 6;
+
+    private final int species;
+    private final int fields;
+    private final double[] slots;
+
+    // Samples published and samples written, only ever moved forward by the simulation and writer thread
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Only touched by the simulation thread
+    private final int[] population;
+    private volatile long dropped = 0;
+
+    private final BufferedWriter out;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure = null;
+
+    public PopulationStats(Path file, int species) throws IOException {
+        this.species = species;
+        this.fields = firstSpecies + species;
+        this.slots = new double[capacity * fields];
+        this.population = new int[species+1];
+
+        this.out = Files.newBufferedWriter(file);
+        out.write("tick,births,eaten,starved,mean_life,food");
+        for(int s = 1; s <= species; s++)
+            out.write(",species_" + s);
+        out.newLine();
+
+        this.writer = new Thread(this::write, "Population stats");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Called on the simulation thread at the end of every tick
+    public void publish(World world) {
+        long tail = this.tail.get();
+        if(tail - head.getAcquire() == capacity) {
+            dropped++;
+            return;
+        }
+
+        Arrays.fill(population, 0);
+        long life = world.census(population);
+        int boids = 0;
+        for(int s = 1; s <= species; s++)
+            boids += population[s];
+
+        TickMetrics metrics = world.getMetrics();
+        int at = (int)(tail % capacity) * fields;
+        slots[at + tick] = world.getTicks();
+        slots[at + births] = metrics.getBirths();
+        slots[at + eaten] = metrics.getEaten();
+        slots[at + starved] = metrics.getStarved();
+        slots[at + meanLife] = boids == 0 ? 0 : (double)life / boids;
+        slots[at + food] = population[0];
+        for(int s = 1; s <= species; s++)
+            slots[at + firstSpecies + s-1] = population[s];
+
+        // Makes the slot visible to the writer before the slot count
+        this.tail.setRelease(tail + 1);
+    }
+
+    private void write() {
+        StringBuilder line = new StringBuilder();
+        try {
+            while(true) {
+                // Read before draining, so a sample published before close is always written
+                boolean stopping = !running;
+                long head = this.head.get(), tail = this.tail.getAcquire();
+                if(head == tail) {
+                    if(stopping) break;
+                    out.flush();
+                    LockSupport.parkNanos(idleNanos);
+                    continue;
+                }
+
+                for(; head < tail; head++) {
+                    int at = (int)(head % capacity) * fields;
+                    line.setLength(0);
+                    for(int f = 0; f < fields; f++) {
+                        if(f > 0) line.append(',');
+                        if(f == meanLife) appendHundredths(line, slots[at + f]);
+                        else line.append((long)slots[at + f]);
+                    }
+                    out.write(line.toString());
+                    out.newLine();
+                }
+
+                // Hands the slots back to the simulation thread once they have been read
+                this.head.setRelease(head);
+            }
+            out.flush();
+        }catch(IOException e) {
+            failure = e;
+        }
+    }
+
+    // Two decimal places without the scientific notation Double.toString switches to for large values
+    private static void appendHundredths(StringBuilder line, double value) {
+        long hundredths = Math.round(value * 100);
+        line.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if(fraction < 10) line.append('0');
+        line.append(fraction);
+    }
+
+    public int getSpecies() {
+        return species;
+    }
+
+    // Samples that were written or are still waiting in the ring
+    public long getPublished() {
+        return tail.get();
+    }
+
+    // Samples lost because the writer was a whole ring behind
+    public long getDropped() {
+        return dropped;
+    }
+
+    // Writes out every sample published so far and closes the file
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            out.close();
+        } finally {
+            if(failure != null)
+                throw new IOException("Could not write population statistics", failure);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package simulation;
+
+import internal.Boid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Appends every tick's snapshot to a recording file through memory-mapped chunks, so writing a frame
+// is an in-memory encode and the operating system flushes the pages in the background.
+//
+// A file is a header followed by frames, each starting with its length so a reader can index them.
+// Positions are quarter pixels written as zig-zag varints relative to the same entity in the previous
+// frame. Entities keep their order from one tick to the next, except that the dead are removed and
+// births are inserted, so every entity is matched to the next unused one of the same size nearby in
+// the previous frame. The size byte carries the alive flag and marks the rare entities that skip
+// ahead or have no match. Every keyFrameInterval frames the previous frame is treated as empty, so a
+// reader can start decoding there.
+@SuppressWarnings("All")
+public class Recorder implements AutoCloseable {
+
+    static final int magic = 0x424F4944; // "BOID"
+    static final int version = 1;
+    static final int headerBytes = 12;
+    static final int frameHeaderBytes = 25;
+    static final int keyFrameInterval = 64;
+    static final double positionScale = 4;
+
+    // Size byte layout
+    static final int aliveBit = 0x80;
+    static final int skipBit = 0x40;
+    static final int sizeMask = 0x3F;
+
+    // Entities further than this apart in either axis, in quarter pixels, are not the same one
+    private static final int maxMove = (int)Math.ceil((Boid.maxVelocity + 1) * positionScale);
+    private static final int maxSkip = 8;
+
+    // The most bytes one entity can take: size, skip, two 5 byte varints, heading and hue
+    private static final int maxEntityBytes = 14;
+    private static final long chunkBytes = 64L << 20;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long chunkStart;
+    private long frames = 0;
+
+    // Quantised positions and sizes of the previous frame and the one being written
+    private Frame previous = new Frame();
+    private Frame current = new Frame();
+
+    public Recorder(Path file, int species) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        map(0, headerBytes);
+        buffer.putInt(magic);
+        buffer.putInt(version);
+        buffer.putInt(species);
+    }
+
+    // Called on the simulation thread with the world size the snapshot was taken at
+    public void record(Snapshot snapshot, int width, int height) throws IOException {
+        int count = snapshot.getCount();
+        int max = frameHeaderBytes + count * maxEntityBytes;
+        if(buffer.remaining() < max)
+            map(chunkStart + buffer.position(), max);
+
+        boolean key = frames % keyFrameInterval == 0;
+        if(key) previous.count = 0;
+        current.resize(count);
+
+        int start = buffer.position();
+        buffer.putInt(0); // Length, filled in below
+        buffer.put((byte)(key ? 1 : 0));
+        buffer.putLong(snapshot.getTick());
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(count);
+
+        int cursor = 0;
+        for(int i = 0; i < count; i++) {
+            int x = quantise(snapshot.x(i)), y = quantise(snapshot.y(i));
+            int size = Math.min(snapshot.size(i), sizeMask);
+            current.set(i, x, y, size);
+
+            int flags = snapshot.alive(i) ? aliveBit : 0;
+            int match = cursor < previous.count ? previous.match(cursor, x, y, size) : -1;
+            int px = 0, py = 0;
+            if(cursor >= previous.count) {
+                buffer.put((byte)(size | flags));
+            }
+            else if(match == cursor) {
+                buffer.put((byte)(size | flags));
+                px = previous.x[match];
+                py = previous.y[match];
+                cursor++;
+            }
+            else {
+                // Zero marks an entity with no match, anything else is how many previous entities to skip
+                buffer.put((byte)(size | flags | skipBit));
+                putVarint(buffer, match < 0 ? 0 : match - cursor);
+                if(match >= 0) {
+                    px = previous.x[match];
+                    py = previous.y[match];
+                    cursor = match + 1;
+                }
+            }
+
+            putVarint(buffer, x - px);
+            putVarint(buffer, y - py);
+
+            double heading = snapshot.heading(i) / (2 * Math.PI);
+            float hue = snapshot.hue(i);
+            buffer.put((byte)Math.floorMod((int)Math.round(heading * 256), 256));
+            buffer.put((byte)((int)((hue - Math.floor(hue)) * 256) & 0xFF));
+        }
+
+        buffer.putInt(start, buffer.position() - start);
+        frames++;
+
+        Frame t = previous;
+        previous = current;
+        current = t;
+    }
+
+    // Starts a new mapping at the given file position big enough for at least the given number of bytes
+    private void map(long position, int atLeast) throws IOException {
+        chunkStart = position;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(chunkBytes, atLeast));
+    }
+
+    private static int quantise(double v) {
+        return (int)Math.round(v * positionScale);
+    }
+
+    private static void putVarint(ByteBuffer buffer, int v) {
+        int z = (v << 1) ^ (v >> 31);
+        while((z & ~0x7F) != 0) {
+            buffer.put((byte)((z & 0x7F) | 0x80));
+            z >>>= 7;
+        }
+        buffer.put((byte)z);
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    // Cuts the file back to the frames written, the rest of the last mapping is unused space
+    @Override
+    public void close() throws IOException {
+        long end = chunkStart + buffer.position();
+        buffer.force();
+        channel.truncate(end);
+        channel.close();
+    }
+
+    // Quantised state of one frame, shared with Recording which decodes against the same layout
+    static class Frame {
+
+        int count = 0;
+        int[] x = new int[0];
+        int[] y = new int[0];
+        int[] size = new int[0];
+
+        void resize(int count) {
+            if(x.length < count) {
+                x = Arrays.copyOf(x, count);
+                y = Arrays.copyOf(y, count);
+                size = Arrays.copyOf(size, count);
+            }
+            this.count = count;
+        }
+
+        void set(int i, int x, int y, int size) {
+            this.x[i] = x;
+            this.y[i] = y;
+            this.size[i] = size;
+        }
+
+        // The first entity from the cursor that could be the given one, or -1
+        private int match(int cursor, int x, int y, int size) {
+            int end = Math.min(count, cursor + maxSkip + 1);
+            for(int i = cursor; i < end; i++) {
+                if(this.size[i] == size && Math.abs(this.x[i] - x) <= maxMove && Math.abs(this.y[i] - y) <= maxMove)
+                    return i;
+            }
+            return -1;
+        }
+    }
+}
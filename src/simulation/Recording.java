@@ -0,0 +1,184 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static simulation.Recorder.*;
+
+// Random access to the frames of a file written by Recorder. Frames are indexed once when opened,
+// moving forward one frame decodes only that frame, and any other jump decodes forward from the
+// closest key frame before it.
+@SuppressWarnings("All")
+public class Recording implements AutoCloseable {
+
+    private static final long windowBytes = 64L << 20;
+
+    private final FileChannel channel;
+    private final int species;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    // The mapped part of the file, remapped when a frame falls outside it
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // Decoder state, the last decoded frame and its quantised positions
+    private int decoded = -1;
+    private Frame previous = new Frame();
+    private Frame current = new Frame();
+    private int width;
+    private int height;
+
+    public Recording(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes);
+        channel.read(header, 0);
+        header.flip();
+        if(header.remaining() < headerBytes || header.getInt() != magic)
+            throw new IOException("Not a boids recording: " + file);
+        if(header.getInt() != version)
+            throw new IOException("Unsupported recording version in " + file);
+        this.species = header.getInt();
+
+        // Walks the length prefixes, a frame cut short by a crash ends the recording
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        int frames = 0;
+        long size = channel.size();
+        ByteBuffer prefix = ByteBuffer.allocate(4);
+        for(long position = headerBytes; position + frameHeaderBytes <= size; ) {
+            prefix.clear();
+            channel.read(prefix, position);
+            int length = prefix.flip().getInt();
+            if(length < frameHeaderBytes || position + length > size)
+                break;
+
+            if(frames == offsets.length) {
+                offsets = Arrays.copyOf(offsets, frames * 2);
+                lengths = Arrays.copyOf(lengths, frames * 2);
+            }
+
+            offsets[frames] = position;
+            lengths[frames] = length;
+            frames++;
+            position += length;
+        }
+
+        this.offsets = Arrays.copyOf(offsets, frames);
+        this.lengths = Arrays.copyOf(lengths, frames);
+    }
+
+    public Snapshot frame(int index) throws IOException {
+        if(index < 0 || index >= offsets.length)
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + offsets.length);
+
+        // Anything but the next frame is decoded forward from the key frame before it
+        if(index != decoded + 1) {
+            for(int i = index - index % keyFrameInterval; i < index; i++)
+                decode(i, false);
+        }
+
+        return decode(index, true);
+    }
+
+    // Decodes one frame on top of the previous one, only building a snapshot when asked to
+    private Snapshot decode(int index, boolean snapshot) throws IOException {
+        ByteBuffer buffer = frameBuffer(index);
+        buffer.getInt();
+        boolean key = buffer.get() != 0;
+        long tick = buffer.getLong();
+        width = buffer.getInt();
+        height = buffer.getInt();
+        int count = buffer.getInt();
+
+        if(key) previous.count = 0;
+        current.resize(count);
+
+        Snapshot result = snapshot ? new Snapshot(count, tick, null) : null;
+        int cursor = 0;
+        for(int i = 0; i < count; i++) {
+            int flags = buffer.get() & 0xFF;
+            int size = flags & sizeMask;
+
+            // Mirrors the matching the recorder did, see Recorder
+            int match = -1;
+            if(cursor < previous.count) {
+                match = cursor;
+                if((flags & skipBit) != 0) {
+                    int skip = getVarint(buffer);
+                    match = skip == 0 ? -1 : cursor + skip;
+                }
+                if(match >= 0) cursor = match + 1;
+            }
+
+            int x = getVarint(buffer), y = getVarint(buffer);
+            if(match >= 0) {
+                x += previous.x[match];
+                y += previous.y[match];
+            }
+            current.set(i, x, y, size);
+
+            int heading = buffer.get() & 0xFF, hue = buffer.get() & 0xFF;
+            if(result != null) {
+                result.add(x / positionScale, y / positionScale, heading / 256.0 * 2 * Math.PI, (hue + 0.5f) / 256,
+                    size, (flags & aliveBit) != 0);
+            }
+        }
+
+        Frame t = previous;
+        previous = current;
+        current = t;
+        decoded = index;
+        return result;
+    }
+
+    private ByteBuffer frameBuffer(int index) throws IOException {
+        long offset = offsets[index];
+        int length = lengths[index];
+        if(window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            windowStart = offset;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                Math.min(channel.size() - offset, Math.max(windowBytes, length)));
+        }
+
+        return window.slice((int)(offset - windowStart), length);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int z = 0;
+        for(int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            z |= (b & 0x7F) << shift;
+            if(b >= 0) break;
+        }
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    public int getFrames() {
+        return offsets.length;
+    }
+
+    public int getSpecies() {
+        return species;
+    }
+
+    // World size of the last decoded frame
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,179 @@
+package simulation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+import static simulation.Recorder.aliveBit;
+import static simulation.Recorder.sizeMask;
+import static simulation.ViewServer.*;
+
+// Shows the world a ViewServer serves in place of a simulation, so a window can watch a run in another
+// process without taking CPU from it. A thread of its own decodes every frame that arrives, and every
+// step picks up the newest one. Only the viewport set with view is sent, and only every so many ticks.
+@SuppressWarnings("All")
+public class RemoteWorld extends World {
+
+    // Entities just outside the view still show part of their shape
+    private static final double margin = 16;
+
+    private final SocketChannel channel;
+    private final Thread reader;
+    private final int every;
+
+    private volatile Snapshot latest = Snapshot.empty;
+    private volatile int latestWidth = 0;
+    private volatile int latestHeight = 0;
+    private volatile long frames = 0;
+    private volatile boolean open = true;
+    private Snapshot frame = Snapshot.empty;
+
+    // The viewport last asked for, only touched by the thread calling view
+    private final ByteBuffer subscription = ByteBuffer.allocate(subscriptionBytes).order(ByteOrder.LITTLE_ENDIAN);
+    private double viewX = Double.NaN;
+    private double viewY = Double.NaN;
+    private double viewWidth = Double.NaN;
+    private double viewHeight = Double.NaN;
+
+    // The world shown has the species of the one served, which frames do not carry
+    public RemoteWorld(String host, int port, int species, int every) throws IOException {
+        super(species, 0, 0, Indexing.QUADTREE);
+        this.every = Math.max(1, every);
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        view(0, 0, 0, 0);
+
+        this.reader = new Thread(this::read, "Remote world");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Asks for the given part of the world from the next frame on, a width of 0 for all of it
+    public void view(double x, double y, double width, double height) throws IOException {
+        if(width > 0 && height > 0) {
+            x -= margin;
+            y -= margin;
+            width += 2 * margin;
+            height += 2 * margin;
+        }
+
+        if(x == viewX && y == viewY && width == viewWidth && height == viewHeight)
+            return;
+
+        viewX = x;
+        viewY = y;
+        viewWidth = width;
+        viewHeight = height;
+        subscription.clear();
+        subscription.putDouble(x).putDouble(y).putDouble(width).putDouble(height).putInt(every);
+        subscription.flip();
+        while(subscription.hasRemaining()) channel.write(subscription);
+    }
+
+    private void read() {
+        ByteBuffer in = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while(open) {
+                in.clear().limit(4);
+                readFully(in);
+                int length = in.getInt(0);
+
+                if(in.capacity() < length) in = ByteBuffer.allocate(Math.max(length, in.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+                in.clear().limit(length);
+                readFully(in);
+                decode(in.flip());
+            }
+        }catch(IOException e) {
+            if(open) System.err.println("Lost the view server: " + e.getMessage());
+        }
+    }
+
+    private void readFully(ByteBuffer in) throws IOException {
+        while(in.hasRemaining()) {
+            if(channel.read(in) < 0)
+                throw new IOException("View server closed the connection");
+        }
+    }
+
+    private void decode(ByteBuffer in) {
+        long tick = in.getLong();
+        int width = in.getInt(), height = in.getInt();
+        double x = in.getDouble(), y = in.getDouble(), w = in.getDouble(), h = in.getDouble();
+        int count = in.getInt();
+
+        Snapshot snapshot = new Snapshot(count, tick, null);
+        for(int i = 0; i < count; i++) {
+            double fx = (in.getShort() & 0xFFFF) / positionScale, fy = (in.getShort() & 0xFFFF) / positionScale;
+            int flags = in.get() & 0xFF;
+            int heading = in.get() & 0xFF, hue = in.get() & 0xFF;
+            snapshot.add(x + fx * w, y + fy * h, heading / 256.0 * 2 * Math.PI, (hue + 0.5f) / 256,
+                flags & sizeMask, (flags & aliveBit) != 0);
+        }
+
+        latestWidth = width;
+        latestHeight = height;
+        latest = snapshot;
+        frames++;
+    }
+
+    @Override
+    public void step() {
+        frame = latest;
+        ticks = frame.getTick();
+        width = latestWidth;
+        height = latestHeight;
+    }
+
+    @Override
+    public Snapshot snapshot(boolean withQuads) {
+        return frame;
+    }
+
+    // The served world keeps its size whatever the window does
+    @Override
+    public void resize(int width, int height) {
+    }
+
+    @Override
+    public void spawn(double x, double y, int size) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public int getCount() {
+        return frame.getCount();
+    }
+
+    // Counts only the entities in view, frames do not carry the rest or their life
+    @Override
+    public long census(int[] population) {
+        for(int i = 0; i < frame.getCount(); i++)
+            if(frame.alive(i)) population[speciesOf(frame.size(i))]++;
+        return 0;
+    }
+
+    public int getEvery() {
+        return every;
+    }
+
+    // Frames received so far, including the ones a step never picked up
+    public long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        try {
+            channel.close();
+        }catch(IOException e) {
+            // Nothing left to do with it
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Plays a recording back in place of a simulation. Every step moves the playhead by the current speed
+// in frames, which can be fractional or negative, and nothing is simulated.
+@SuppressWarnings("All")
+public class ReplayWorld extends World {
+
+    private final Recording recording;
+    private volatile double speed = 1;
+    private volatile double playhead = 0;
+    private Snapshot frame = Snapshot.empty;
+    private int currentFrame = -1;
+
+    public ReplayWorld(Recording recording) {
+        super(recording.getSpecies(), 0, 0, Indexing.QUADTREE);
+        this.recording = recording;
+    }
+
+    @Override
+    public void step() {
+        int frames = recording.getFrames();
+        if(frames == 0)
+            return;
+
+        double next = Math.max(0, Math.min(frames - 1, playhead + speed));
+        playhead = next;
+        load((int)next);
+    }
+
+    private void load(int index) {
+        if(index == currentFrame)
+            return;
+
+        try {
+            frame = recording.frame(index);
+        }catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        currentFrame = index;
+        ticks = frame.getTick();
+        width = recording.getWidth();
+        height = recording.getHeight();
+    }
+
+    @Override
+    public Snapshot snapshot(boolean withQuads) {
+        return frame;
+    }
+
+    // The recorded world keeps its size whatever the window does
+    @Override
+    public void resize(int width, int height) {
+    }
+
+    @Override
+    public void spawn(double x, double y, int size) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public int getCount() {
+        return frame.getCount();
+    }
+
+    // Recordings do not keep the life of entities, so there is none left to report
+    @Override
+    public long census(int[] population) {
+        for(int i = 0; i < frame.getCount(); i++)
+            if(frame.alive(i)) population[speciesOf(frame.size(i))]++;
+        return 0;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    // Frames per step, negative plays backwards and zero pauses
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    // Jumps to a fraction of the way through the recording
+    public void seek(double fraction) {
+        playhead = Math.max(0, Math.min(1, fraction)) * Math.max(0, recording.getFrames() - 1);
+    }
+
+    public int getFrame() {
+        return (int)playhead;
+    }
+
+    public int getFrames() {
+        return recording.getFrames();
+    }
+}
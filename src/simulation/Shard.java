@@ -0,0 +1,268 @@
+package simulation;
+
+import internal.Boid;
+import internal.spatial.IntList;
+import internal.store.EntityStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+
+// One vertical strip of a world split across processes. The strips tile the torus left to right and
+// every shard only talks to the two either side of it. Each tick is two exchanges with both of them:
+//
+// 1. Ownership: the handles of their ghosts eaten here last tick, and the entities that moved out of
+//    this strip into theirs. Kills are applied and migrants adopted before the lists are updated.
+// 2. Ghosts: copies of the entities within the view range of the shared edge. They are indexed and
+//    seen as neighbours for one tick but never moved, then dropped again.
+//
+// The strips must be at least the view range wide so that ghosts only ever come from a neighbour.
+@SuppressWarnings("All")
+public class Shard implements AutoCloseable {
+
+    // x, y, vx and vy, size, life, hue and shade, handle
+    private static final int entityBytes = 4 * 8 + 2 * 4 + 2 * 4 + 4;
+    private static final double ghostWidth = Boid.viewRange;
+
+    private final ArrayWorld world;
+    private final EntityStore store;
+    private final int index;
+    private final int shards;
+    private final double x0;
+    private final double x1;
+
+    private final ShardLink left;
+    private final ShardLink right;
+
+    // Ghosts added this tick start at this id, the left neighbour's first, with the handles their owners gave them
+    private int ghostStart = 0;
+    private final IntList ghostHandles = new IntList();
+    private int leftGhosts = 0;
+
+    // Kills of each neighbour's ghosts to report in the next ownership exchange
+    private final IntList leftKills = new IntList();
+    private final IntList rightKills = new IntList();
+
+    // Entities that left the strip last tick, already killed here but still readable until the lists update
+    private final IntList migrantsLeft = new IntList();
+    private final IntList migrantsRight = new IntList();
+
+    // Entities near each edge, reused every tick
+    private final IntList edgeLeft = new IntList();
+    private final IntList edgeRight = new IntList();
+
+    private long exchangeNanos = 0;
+
+    // Keeps only the entities of strip index of shards, then connects to both neighbours.
+    // Shard i listens on ports[i] for its left neighbour and connects to ports[i+1] for its right one.
+    public Shard(ArrayWorld world, int index, int shards, int[] ports) throws IOException {
+        checkStrips(world.getWidth(), shards);
+        this.world = world;
+        this.store = world.store();
+        this.index = index;
+        this.shards = shards;
+        this.x0 = world.getWidth() * (double)index / shards;
+        this.x1 = world.getWidth() * (double)(index+1) / shards;
+        world.setShare((double)index / shards, 1.0 / shards);
+
+        for(int id = 0; id < store.count(); id++) {
+            if(owner(store.x(id)) != index) store.kill(id);
+        }
+        store.removeDead();
+
+        try(ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", ports[index]));
+            this.right = ShardLink.connect(ports[(index+1) % shards], "Shard " + index + " right");
+            this.left = ShardLink.accept(server, "Shard " + index + " left");
+        }
+    }
+
+    public static void checkStrips(int width, int shards) {
+        if(shards < 2)
+            throw new IllegalArgumentException("A sharded world needs at least two shards");
+        if(width / (double)shards < ghostWidth)
+            throw new IllegalArgumentException("Strips of " + width / shards + " are narrower than the view range");
+    }
+
+    public void step() throws IOException {
+        long start = System.nanoTime();
+        exchangeOwnership();
+        exchangeNanos += System.nanoTime() - start;
+
+        // Last tick's ghosts and migrants go even in flocking mode, where the world itself never removes anything
+        store.removeDead();
+        world.updateLists();
+
+        start = System.nanoTime();
+        exchangeGhosts();
+        exchangeNanos += System.nanoTime() - start;
+
+        world.advance();
+        dropGhosts();
+        collectMigrants();
+    }
+
+    // Settles the kills and migrations of the last tick, so every entity is alive in exactly one shard
+    public void finish() throws IOException {
+        exchangeOwnership();
+    }
+
+    private void exchangeOwnership() throws IOException {
+        left.begin();
+        right.begin();
+        putHandles(left, leftKills);
+        putHandles(right, rightKills);
+        putEntities(left, migrantsLeft);
+        putEntities(right, migrantsRight);
+        left.send();
+        right.send();
+
+        adoptOwnership(left.receive(), leftKills);
+        adoptOwnership(right.receive(), rightKills);
+        leftKills.clear();
+        rightKills.clear();
+        migrantsLeft.clear();
+        migrantsRight.clear();
+    }
+
+    // Kills are skipped for entities that migrated before hearing of them, those arrive as migrants
+    // instead and are dropped if this shard is the one that ate them
+    private void adoptOwnership(ByteBuffer in, IntList eaten) {
+        for(int n = in.getInt(); n > 0; n--) {
+            int id = store.id(in.getInt());
+            if(id < 0 || !store.isAlive(id))
+                continue;
+
+            if(store.size(id) > 0) world.getMetrics().eaten();
+            store.kill(id);
+        }
+
+        for(int n = in.getInt(); n > 0; n--) {
+            int id = store.count();
+            if(eaten.contains(addEntity(in))) store.kill(id);
+        }
+    }
+
+    private void exchangeGhosts() throws IOException {
+        left.begin();
+        right.begin();
+        edgeLeft.clear();
+        edgeRight.clear();
+        for(int id = 0; id < store.count(); id++) {
+            if(!store.isAlive(id))
+                continue;
+
+            double x = store.x(id);
+            if(x - x0 < ghostWidth) edgeLeft.add(id);
+            if(x1 - x < ghostWidth) edgeRight.add(id);
+        }
+        putEntities(left, edgeLeft);
+        putEntities(right, edgeRight);
+        left.send();
+        right.send();
+
+        ghostStart = store.count();
+        ghostHandles.clear();
+        addGhosts(left.receive());
+        leftGhosts = ghostHandles.size();
+        addGhosts(right.receive());
+        world.setGhosts(ghostStart, store.count());
+    }
+
+    private void addGhosts(ByteBuffer in) {
+        for(int n = in.getInt(); n > 0; n--)
+            ghostHandles.add(addEntity(in));
+    }
+
+    // Reports eaten ghosts to their owners and removes every ghost at the next list update
+    private void dropGhosts() {
+        IntList kills = world.ghostKills();
+        for(int i = 0; i < kills.size(); i++) {
+            int k = kills.get(i) - ghostStart;
+            (k < leftGhosts ? leftKills : rightKills).add(ghostHandles.get(k));
+        }
+        kills.clear();
+
+        for(int k = 0; k < ghostHandles.size(); k++)
+            store.kill(ghostStart + k);
+        world.setGhosts(0, 0);
+    }
+
+    // Entities that left the strip are handed over next tick, no more than a step away from it
+    private void collectMigrants() {
+        for(int id = 0; id < store.count(); id++) {
+            if(!store.isAlive(id))
+                continue;
+
+            int owner = owner(store.x(id));
+            if(owner == index)
+                continue;
+
+            (owner == (index+1) % shards ? migrantsRight : migrantsLeft).add(id);
+            store.kill(id);
+        }
+    }
+
+    private int owner(double x) {
+        return Math.min(shards-1, Math.max(0, (int)(x / world.getWidth() * shards)));
+    }
+
+    private void putHandles(ShardLink link, IntList handles) {
+        ByteBuffer out = link.message(4 + handles.size() * 4);
+        out.putInt(handles.size());
+        for(int i = 0; i < handles.size(); i++)
+            out.putInt(handles.get(i));
+    }
+
+    private void putEntities(ShardLink link, IntList ids) {
+        ByteBuffer out = link.message(4 + ids.size() * entityBytes);
+        out.putInt(ids.size());
+        for(int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            out.putDouble(store.x(id));
+            out.putDouble(store.y(id));
+            out.putDouble(store.vx(id));
+            out.putDouble(store.vy(id));
+            out.putInt(store.size(id));
+            out.putInt(store.life(id));
+            out.putFloat(store.hue(id));
+            out.putFloat(store.shade(id));
+            out.putInt(store.handle(id));
+        }
+    }
+
+    // Adds an entity read from a message and returns the handle it had in the shard that sent it
+    private int addEntity(ByteBuffer in) {
+        double x = in.getDouble(), y = in.getDouble(), vx = in.getDouble(), vy = in.getDouble();
+        int size = in.getInt(), life = in.getInt();
+        float hue = in.getFloat(), shade = in.getFloat();
+        int id = store.add(x, y, vx, vy, size, hue);
+        store.setLife(id, life);
+        store.setShade(id, shade);
+        return in.getInt();
+    }
+
+    public long takeExchangeNanos() {
+        long nanos = exchangeNanos;
+        exchangeNanos = 0;
+        return nanos;
+    }
+
+    // Entities owned by this shard
+    public int getCount() {
+        int count = 0;
+        for(int id = 0; id < store.count(); id++)
+            if(store.isAlive(id)) count++;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            left.close();
+        } finally {
+            right.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// One end of the TCP connection between two neighbouring shards, carrying one length prefixed message
+// each way per exchange. Messages are sent on a thread of their own, so both ends can send a large
+// message at the same time without each waiting for the other to read.
+@SuppressWarnings("All")
+class ShardLink implements AutoCloseable {
+
+    private static final long connectMillis = 30_000;
+
+    private final SocketChannel channel;
+    private final ExecutorService sender;
+    private CompletableFuture<Void> sending = CompletableFuture.completedFuture(null);
+
+    // Reused for every message, growing to the largest one so far
+    private ByteBuffer out = allocate(1 << 16);
+    private ByteBuffer in = allocate(1 << 16);
+
+    private ShardLink(SocketChannel channel, String name) throws IOException {
+        this.channel = channel;
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Retries until the other shard is listening, it may not have started yet
+    static ShardLink connect(int port, String name) throws IOException {
+        long deadline = System.currentTimeMillis() + connectMillis;
+        while(true) {
+            try {
+                return new ShardLink(SocketChannel.open(new InetSocketAddress("localhost", port)), name);
+            }catch(IOException e) {
+                if(System.currentTimeMillis() > deadline)
+                    throw new IOException("No shard listening on port " + port, e);
+                try {
+                    Thread.sleep(50);
+                }catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while connecting to port " + port, ie);
+                }
+            }
+        }
+    }
+
+    static ShardLink accept(ServerSocketChannel server, String name) throws IOException {
+        return new ShardLink(server.accept(), name);
+    }
+
+    // Starts a new outgoing message once the previous one has gone
+    void begin() throws IOException {
+        await();
+        out.clear();
+        out.putInt(0);
+    }
+
+    // Room for the given number of bytes more in the outgoing message
+    ByteBuffer message(int bytes) {
+        if(out.remaining() < bytes) {
+            ByteBuffer grown = allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+            out.flip();
+            grown.put(out);
+            out = grown;
+        }
+
+        return out;
+    }
+
+    void send() {
+        out.putInt(0, out.position() - 4);
+        out.flip();
+        sending = CompletableFuture.runAsync(() -> {
+            try {
+                while(out.hasRemaining()) channel.write(out);
+            }catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, sender);
+    }
+
+    // Blocks until the next message has arrived whole and returns its body
+    ByteBuffer receive() throws IOException {
+        in.clear().limit(4);
+        readFully();
+        int length = in.getInt(0);
+
+        if(in.capacity() < length) in = allocate(length);
+        in.clear().limit(length);
+        readFully();
+        return in.flip();
+    }
+
+    private void readFully() throws IOException {
+        while(in.hasRemaining()) {
+            if(channel.read(in) < 0)
+                throw new IOException("Neighbouring shard closed the connection");
+        }
+    }
+
+    private void await() throws IOException {
+        try {
+            sending.join();
+        }catch(CompletionException e) {
+            throw new IOException("Sending to neighbouring shard failed", e.getCause());
+        }
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            await();
+        } finally {
+            sender.shutdown();
+            channel.close();
+        }
+    }
+}
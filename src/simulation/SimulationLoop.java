@@ -0,0 +1,113 @@
+package simulation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+@SuppressWarnings("All")
+public class SimulationLoop implements Runnable {
+
+    private static final int maxCatchUp = 5;
+
+    private final long stepNanos;
+    private final Runnable step;
+    private final Runnable publish;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // What stopped the loop, if a tick failed, and who to tell
+    private volatile Throwable failure = null;
+    private volatile Consumer<Throwable> onFailure = e -> {};
+
+    public SimulationLoop(int ticksPerSecond, Runnable step, Runnable publish) {
+        this.stepNanos = 1_000_000_000L / ticksPerSecond;
+        this.step = step;
+        this.publish = publish;
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        while(running) {
+            int steps = 0;
+            try {
+                while(System.nanoTime() - next >= 0 && steps < maxCatchUp) {
+                    drainCommands();
+                    step.run();
+                    next += stepNanos;
+                    steps++;
+                }
+
+                // Too far behind to catch up, drop the backlog instead of spiralling
+                if(steps == maxCatchUp && System.nanoTime() - next >= 0)
+                    next = System.nanoTime();
+
+                if(steps > 0)
+                    publish.run();
+            }catch(RuntimeException | Error e) {
+                // A broken tick would only break again, so the loop stops rather than showing a frozen world
+                running = false;
+                failure = e;
+                System.err.println("Simulation stopped: " + e);
+                e.printStackTrace();
+                onFailure.accept(e);
+                return;
+            }
+
+            long wait = next - System.nanoTime();
+            if(wait > 0) LockSupport.parkNanos(wait);
+        }
+    }
+
+    // Runs the command on the simulation thread before the next tick
+    public void post(Runnable command) {
+        commands.add(command);
+    }
+
+    // A failed command is reported and dropped, the ticks around it are unaffected
+    private void drainCommands() {
+        Runnable command;
+        while((command = commands.poll()) != null) {
+            try {
+                command.run();
+            }catch(RuntimeException e) {
+                System.err.println("Command failed: " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Called on the simulation thread with whatever stopped the loop
+    public void setOnFailure(Consumer<Throwable> onFailure) {
+        this.onFailure = onFailure;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public synchronized void start() {
+        if(running) return;
+
+        running = true;
+        thread = new Thread(this, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if(thread == null) return;
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+}
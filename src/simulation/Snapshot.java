@@ -0,0 +1,96 @@
+package simulation;
+
+import internal.Boid;
+import internal.Food;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+// Immutable copy of the world published by the simulation thread for the renderer
+@SuppressWarnings("All")
+public class Snapshot {
+
+    public static final Snapshot empty = new Snapshot(0, 0, null);
+
+    private final int count;
+    private final double[] x;
+    private final double[] y;
+    private final double[] heading;
+    private final float[] hue;
+    private final int[] size;
+    private final boolean[] alive;
+    private final Shape quads;
+
+    private final long tick;
+    private int index = 0;
+
+    Snapshot(int count, long tick, Shape quads) {
+        this.count = count;
+        this.tick = tick;
+        this.quads = quads;
+        this.x = new double[count];
+        this.y = new double[count];
+        this.heading = new double[count];
+        this.hue = new float[count];
+        this.size = new int[count];
+        this.alive = new boolean[count];
+    }
+
+    void add(Boid b) {
+        add(b.getPosition().x, b.getPosition().y, b.getVelocity().heading(), b.getShade(), b.getSize(), !b.isDead());
+    }
+
+    void add(double x, double y, double heading, float hue, int size, boolean alive) {
+        this.x[index] = x;
+        this.y[index] = y;
+        this.heading[index] = heading;
+        this.hue[index] = hue;
+        this.size[index] = size;
+        this.alive[index] = alive;
+        index++;
+    }
+
+    public void draw(Graphics2D g, int i) {
+        if(size[i] == 0) Food.draw(g, x[i], y[i]);
+        else Boid.draw(g, x[i], y[i], heading[i], size[i], hue[i]);
+    }
+
+    // Outlines are transformed rather than the graphics, so their lines stay one pixel wide at any zoom
+    public void drawQuads(Graphics2D g, AffineTransform transform) {
+        if(quads != null)
+            g.draw(transform.createTransformedShape(quads));
+    }
+
+    public double x(int i) {
+        return x[i];
+    }
+
+    public double y(int i) {
+        return y[i];
+    }
+
+    public double heading(int i) {
+        return heading[i];
+    }
+
+    public float hue(int i) {
+        return hue[i];
+    }
+
+    public int size(int i) {
+        return size[i];
+    }
+
+    // Entities killed during the tick stay in it until the world removes them at the start of the next one
+    public boolean alive(int i) {
+        return alive[i];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+}
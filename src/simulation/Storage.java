@@ -0,0 +1,14 @@
+package simulation;
+
+// How a world keeps its entities in memory
+public enum Storage {
+
+    // One Boid object per entity with heap allocated vectors and neighbour lists
+    OBJECTS,
+
+    // Packed primitive arrays with double precision kinematics
+    DOUBLE,
+
+    // Packed primitive arrays with float precision kinematics
+    FLOAT
+}
@@ -0,0 +1,237 @@
+package simulation;
+
+import internal.Config;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// Runs many worlds that differ only in their steering weights: every combination of the values given
+// for each weight, a number of times over, on a fixed number of threads. Every world has a Config of
+// its own, so they run side by side without sharing anything but the JVM.
+//
+// Each run stops at the tick limit or once every boid is gone, and each combination gets a CSV line of
+// how its runs went, as medians over the runs: the tick the first species died out at and the tick every
+// species died out at, where a species that lasted counts as dying out at the tick limit, plus the means
+// of the species left, the boids left and how much the boid population varied over the run.
+@SuppressWarnings("All")
+public class Sweep {
+
+    private final Supplier<World> worlds;
+    private final int ticks;
+    private final int repeats;
+    private final int threads;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<double[]> values = new ArrayList<>();
+
+    // Worlds come from the supplier fully populated, in the mode and with the food web to sweep over
+    public Sweep(Supplier<World> worlds, int ticks, int repeats, int threads) {
+        this.worlds = worlds;
+        this.ticks = ticks;
+        this.repeats = repeats;
+        this.threads = threads;
+    }
+
+    // A weight of Config and its values, as "name=a,b,c" or "name=from:to:step"
+    public void vary(String spec) {
+        String[] parts = spec.split("=", 2);
+        if(parts.length != 2)
+            throw new IllegalArgumentException("Expected name=values, got " + spec);
+
+        new Config().setWeight(parts[0], 0); // Fails early on an unknown name
+        names.add(parts[0]);
+        values.add(parseValues(parts[1]));
+    }
+
+    private static double[] parseValues(String spec) {
+        if(!spec.contains(":"))
+            return Arrays.stream(spec.split(",")).mapToDouble(Double::parseDouble).toArray();
+
+        String[] range = spec.split(":");
+        if(range.length != 3)
+            throw new IllegalArgumentException("Expected from:to:step, got " + spec);
+
+        double from = Double.parseDouble(range[0]), to = Double.parseDouble(range[1]), step = Double.parseDouble(range[2]);
+        if(step <= 0 || to < from)
+            throw new IllegalArgumentException("Empty range " + spec);
+
+        // Rounded so that steps like 0.1 still reach the end of the range
+        int n = (int)Math.floor((to - from) / step + 1e-9) + 1;
+        double[] values = new double[n];
+        for(int i = 0; i < n; i++)
+            values[i] = from + i * step;
+        return values;
+    }
+
+    // Every combination of the values, the first weight changing slowest
+    private List<double[]> points() {
+        List<double[]> points = new ArrayList<>();
+        points.add(new double[0]);
+        for(double[] axis : values) {
+            List<double[]> next = new ArrayList<>();
+            for(double[] point : points) {
+                for(double value : axis) {
+                    double[] p = Arrays.copyOf(point, point.length + 1);
+                    p[point.length] = value;
+                    next.add(p);
+                }
+            }
+            points = next;
+        }
+
+        return points;
+    }
+
+    // Queues every run at once and prints the line of each combination in order as soon as its runs are done
+    public void run(PrintStream out) {
+        if(names.isEmpty())
+            throw new IllegalArgumentException("Nothing to sweep over");
+
+        List<double[]> points = points();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<List<Future<Run>>> runs = new ArrayList<>();
+            for(double[] point : points) {
+                List<Future<Run>> repeated = new ArrayList<>();
+                for(int i = 0; i < repeats; i++)
+                    repeated.add(pool.submit(() -> run(point)));
+                runs.add(repeated);
+            }
+
+            int species = -1;
+            for(int p = 0; p < points.size(); p++) {
+                List<Run> done = new ArrayList<>();
+                for(Future<Run> run : runs.get(p))
+                    done.add(run.get());
+
+                if(species < 0) {
+                    species = done.get(0).extinction.length - 1;
+                    out.println(header(species));
+                }
+                out.println(line(points.get(p), done));
+            }
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e) {
+            throw new IllegalStateException("A sweep run failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Run run(double[] point) {
+        // Each world is closed once its run is done, so array worlds do not leave a pool of threads behind each
+        try(World world = worlds.get()) {
+            for(int i = 0; i < point.length; i++)
+                world.getConfig().setWeight(names.get(i), point[i]);
+
+            int species = world.getSpecies();
+            int[] population = new int[species+1];
+            world.census(population);
+
+            // Species that were never there, such as all but the first when flocking, do not die out
+            Run run = new Run(species);
+            for(int s = 1; s <= species; s++)
+                run.extinction[s] = population[s] > 0 ? ticks : -1;
+
+            double sum = 0, squares = 0;
+            int samples = 0, boids = 0;
+            for(int t = 1; t <= ticks; t++) {
+                world.step();
+                Arrays.fill(population, 0);
+                world.census(population);
+
+                boids = 0;
+                for(int s = 1; s <= species; s++) {
+                    boids += population[s];
+                    if(population[s] == 0 && run.extinction[s] == ticks) run.extinction[s] = t;
+                }
+
+                sum += boids;
+                squares += (double)boids * boids;
+                samples++;
+                if(boids == 0) break;
+            }
+
+            double mean = sum / samples;
+            run.variation = mean == 0 ? 0 : Math.sqrt(Math.max(0, squares / samples - mean * mean)) / mean;
+            run.boids = boids;
+            for(int s = 1; s <= species; s++) {
+                if(run.extinction[s] < 0) continue;
+                run.first = Math.min(run.first, run.extinction[s]);
+                run.last = run.last < 0 ? run.extinction[s] : Math.max(run.last, run.extinction[s]);
+                if(run.extinction[s] == ticks && population[s] > 0) run.left++;
+            }
+
+            return run;
+        }
+    }
+
+    private String header(int species) {
+        StringBuilder header = new StringBuilder();
+        for(String name : names) header.append(name).append(',');
+        header.append("runs,first_extinction,all_extinct,species_left,boids_left,population_cv");
+        for(int s = 1; s <= species; s++) header.append(",extinction_").append(s);
+        return header.toString();
+    }
+
+    private String line(double[] point, List<Run> runs) {
+        StringBuilder line = new StringBuilder();
+        for(double value : point) line.append(format(value)).append(',');
+
+        line.append(runs.size())
+            .append(',').append(median(runs, r -> r.first))
+            .append(',').append(median(runs, r -> r.last))
+            .append(',').append(format(runs.stream().mapToInt(r -> r.left).average().orElse(0)))
+            .append(',').append(format(runs.stream().mapToInt(r -> r.boids).average().orElse(0)))
+            .append(',').append(format(runs.stream().mapToDouble(r -> r.variation).average().orElse(0)));
+
+        int species = runs.get(0).extinction.length - 1;
+        for(int s = 1; s <= species; s++) {
+            int k = s;
+            line.append(',');
+            if(runs.get(0).extinction[s] >= 0) line.append(median(runs, r -> r.extinction[k]));
+        }
+
+        return line.toString();
+    }
+
+    private static long median(List<Run> runs, ToLongFunction<Run> value) {
+        long[] values = runs.stream().mapToLong(value).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value).replaceAll("\\.?0+$", "");
+    }
+
+    // The outcome of one world
+    private class Run {
+
+        // Tick each species died out at, the tick limit if it lasted and -1 if it was never there
+        private final long[] extinction;
+        private long first = ticks;
+        private long last = -1;
+        private int left = 0;
+        private int boids = 0;
+        private double variation = 0;
+
+        private Run(int species) {
+            this.extinction = new long[species+1];
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package simulation;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+// Rolling timings of every phase of a tick and counters of what happened during the last one.
+// Timings are written by the simulation and render threads and read by the HUD and over JMX.
+@SuppressWarnings("All")
+public class TickMetrics implements TickMetricsMBean {
+
+    private static final int window = 256;
+
+    private final Window[] timings = new Window[Phase.values().length];
+    private volatile boolean enabled = false;
+
+    // Counted during the current tick, only touched by the simulation thread
+    private int births;
+    private int eaten;
+    private int starved;
+    private int food;
+    private final long[] neighbours;
+    private final int[] members;
+
+    // Published at the end of every tick
+    private volatile int lastBirths;
+    private volatile int lastEaten;
+    private volatile int lastStarved;
+    private volatile int lastFood;
+    private volatile double[] averageNeighbours;
+    private double[] spareAverages;
+    private volatile long ticks;
+
+    public TickMetrics(int species) {
+        for(int i = 0; i < timings.length; i++)
+            timings[i] = new Window();
+
+        this.neighbours = new long[species+1];
+        this.members = new int[species+1];
+        this.averageNeighbours = new double[species+1];
+        this.spareAverages = new double[species+1];
+    }
+
+    // Returns the start time of a phase, or 0 when timings are off
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void stop(Phase phase, long start) {
+        if(enabled && start != 0)
+            record(phase, System.nanoTime() - start);
+    }
+
+    public void record(Phase phase, long nanos) {
+        if(enabled)
+            timings[phase.ordinal()].add(nanos);
+    }
+
+    public void birth() {
+        births++;
+    }
+
+    // A boid caught by a predator
+    public void eaten() {
+        eaten++;
+    }
+
+    // A boid whose life ran out
+    public void starved() {
+        starved++;
+    }
+
+    public void foodSpawned() {
+        food++;
+    }
+
+    // Total neighbour list length of the given number of boids of one species
+    public void neighbours(int species, long total, int boids) {
+        neighbours[species] += total;
+        members[species] += boids;
+    }
+
+    public void endTick() {
+        // Written into the array readers are not looking at, so a tick allocates nothing
+        double[] average = spareAverages;
+        for(int s = 0; s < average.length; s++)
+            average[s] = members[s] == 0 ? 0 : (double)neighbours[s] / members[s];
+
+        spareAverages = averageNeighbours;
+        averageNeighbours = average;
+        lastBirths = births;
+        lastEaten = eaten;
+        lastStarved = starved;
+        lastFood = food;
+        ticks++;
+
+        births = eaten = starved = food = 0;
+        Arrays.fill(neighbours, 0);
+        Arrays.fill(members, 0);
+    }
+
+    public double p50(Phase phase) {
+        return timings[phase.ordinal()].percentile(0.5);
+    }
+
+    public double p99(Phase phase) {
+        return timings[phase.ordinal()].percentile(0.99);
+    }
+
+    // Makes the metrics visible to JConsole and other JMX clients under boids:type=TickMetrics,name=<name>
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("boids:type=TickMetrics,name=" + ObjectName.quote(name));
+            if(!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        }catch(JMException e) {
+            throw new IllegalStateException("Could not register tick metrics", e);
+        }
+    }
+
+    @Override
+    public double getListsP50() {
+        return p50(Phase.LISTS);
+    }
+
+    @Override
+    public double getListsP99() {
+        return p99(Phase.LISTS);
+    }
+
+    @Override
+    public double getIndexP50() {
+        return p50(Phase.INDEX);
+    }
+
+    @Override
+    public double getIndexP99() {
+        return p99(Phase.INDEX);
+    }
+
+    @Override
+    public double getQueryP50() {
+        return p50(Phase.QUERY);
+    }
+
+    @Override
+    public double getQueryP99() {
+        return p99(Phase.QUERY);
+    }
+
+    @Override
+    public double getSteeringP50() {
+        return p50(Phase.STEERING);
+    }
+
+    @Override
+    public double getSteeringP99() {
+        return p99(Phase.STEERING);
+    }
+
+    @Override
+    public double getRenderP50() {
+        return p50(Phase.RENDER);
+    }
+
+    @Override
+    public double getRenderP99() {
+        return p99(Phase.RENDER);
+    }
+
+    @Override
+    public int getBirths() {
+        return lastBirths;
+    }
+
+    @Override
+    public int getDeaths() {
+        return lastEaten + lastStarved;
+    }
+
+    @Override
+    public int getEaten() {
+        return lastEaten;
+    }
+
+    @Override
+    public int getStarved() {
+        return lastStarved;
+    }
+
+    @Override
+    public int getFoodSpawns() {
+        return lastFood;
+    }
+
+    @Override
+    public double[] getAverageNeighbours() {
+        return averageNeighbours.clone();
+    }
+
+    @Override
+    public long getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // The last samples of one phase in nanoseconds, percentiles come out in milliseconds
+    private static class Window {
+
+        private final long[] samples = new long[window];
+        private final long[] sorted = new long[window];
+        private int next = 0;
+        private int count = 0;
+
+        private synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % window;
+            count = Math.min(count + 1, window);
+        }
+
+        private synchronized double percentile(double p) {
+            if(count == 0)
+                return 0;
+
+            System.arraycopy(samples, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            int i = Math.max(0, (int)Math.ceil(p * count) - 1);
+            return sorted[i] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package simulation;
+
+// Management interface of TickMetrics, timings are in milliseconds over the recent window
+public interface TickMetricsMBean {
+
+    double getListsP50();
+    double getListsP99();
+
+    double getIndexP50();
+    double getIndexP99();
+
+    double getQueryP50();
+    double getQueryP99();
+
+    double getSteeringP50();
+    double getSteeringP99();
+
+    double getRenderP50();
+    double getRenderP99();
+
+    int getBirths();
+    int getDeaths();
+    int getEaten();
+    int getStarved();
+    int getFoodSpawns();
+
+    // Indexed by species, food first
+    double[] getAverageNeighbours();
+
+    long getTicks();
+
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+}
@@ -0,0 +1,262 @@
+package simulation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static simulation.Recorder.aliveBit;
+import static simulation.Recorder.sizeMask;
+
+// Serves the ticks of a running world to RemoteWorld viewers over local TCP, so a window can watch a heavy run
+// from a process of its own. Each viewer subscribes to a viewport of the world and a tick interval, and can
+// change both at any time. The simulation thread never waits for a viewer: once a tick is due for at least
+// one of them it takes a single snapshot, hands it to every viewer it is due for and moves on. Each viewer
+// has a thread of its own that cuts its viewport out of the newest snapshot handed to it and writes it out,
+// and a viewer still busy writing when a newer one arrives just skips the older one.
+//
+// Subscriptions from the viewer are fixed size: the viewport as x, y, width and height in world units, a
+// width of 0 for the whole world, then the tick interval. Frames to the viewer start with their length, then
+// the tick, the world size, the viewport they cover and the number of entities, each as two 16 bit fractions
+// of the viewport, the size byte of Recorder, the heading and the hue.
+@SuppressWarnings("All")
+public class ViewServer implements AutoCloseable {
+
+    static final int subscriptionBytes = 4 * 8 + 4;
+    static final int frameHeaderBytes = 4 + 8 + 2 * 4 + 4 * 8 + 4;
+    static final int entityBytes = 2 * 2 + 3;
+    static final double positionScale = 65535;
+
+    private final ServerSocketChannel server;
+    private final Thread acceptor;
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+
+    // Only touched by the simulation thread
+    private volatile long skipped = 0;
+
+    public ViewServer(int port) throws IOException {
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", port));
+
+        this.acceptor = new Thread(this::accept, "View server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        try {
+            while(true) {
+                Viewer viewer = new Viewer(server.accept());
+                viewers.add(viewer);
+                viewer.start();
+            }
+        }catch(ClosedChannelException e) {
+            // Closed by close
+        }catch(IOException e) {
+            System.err.println("View server stopped accepting: " + e.getMessage());
+        }
+    }
+
+    // Called on the simulation thread at the end of every tick
+    public void publish(World world) {
+        if(viewers.isEmpty())
+            return;
+
+        long tick = world.getTicks();
+        Frame frame = null;
+        for(Viewer viewer : viewers) {
+            if(tick < viewer.next)
+                continue;
+
+            if(frame == null) frame = new Frame(world.snapshot(false), world.getWidth(), world.getHeight());
+            viewer.next = tick + viewer.every;
+            if(viewer.pending.getAndSet(frame) != null) skipped++;
+            LockSupport.unpark(viewer.sender);
+        }
+    }
+
+    // The port actually bound, for a server started on port 0
+    public int getPort() throws IOException {
+        return ((InetSocketAddress)server.getLocalAddress()).getPort();
+    }
+
+    public int getViewers() {
+        return viewers.size();
+    }
+
+    // Frames replaced by a newer one before their viewer got round to sending them
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for(Viewer viewer : viewers)
+            viewer.close();
+    }
+
+    // A snapshot shared by every viewer it was handed to, with the world size it was taken at
+    private static class Frame {
+
+        private final Snapshot snapshot;
+        private final int width;
+        private final int height;
+
+        private Frame(Snapshot snapshot, int width, int height) {
+            this.snapshot = snapshot;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private class Viewer {
+
+        private final SocketChannel channel;
+        private final Thread sender;
+        private final Thread reader;
+
+        // The subscription, set by the reader thread
+        private volatile double x = 0;
+        private volatile double y = 0;
+        private volatile double width = 0;
+        private volatile double height = 0;
+        private volatile int every = 1;
+
+        // Only moved by the simulation thread, the first tick this viewer wants next
+        private volatile long next = 0;
+        private final AtomicReference<Frame> pending = new AtomicReference<>();
+        // Both threads and the server close a viewer, only the first of them does the work
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        // Reused for every frame, growing to the largest one so far
+        private ByteBuffer out = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Viewer(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            String name = "Viewer " + channel.getRemoteAddress();
+            this.sender = new Thread(this::send, name + " sender");
+            this.reader = new Thread(this::read, name + " reader");
+            sender.setDaemon(true);
+            reader.setDaemon(true);
+        }
+
+        private void start() {
+            reader.start();
+            sender.start();
+        }
+
+        private void send() {
+            try {
+                while(open.get()) {
+                    Frame frame = pending.getAndSet(null);
+                    if(frame == null) {
+                        LockSupport.park(this);
+                        continue;
+                    }
+
+                    encode(frame);
+                    while(out.hasRemaining()) channel.write(out);
+                }
+            }catch(IOException e) {
+                // The viewer went away
+            } finally {
+                close();
+            }
+        }
+
+        private void read() {
+            ByteBuffer in = ByteBuffer.allocate(subscriptionBytes).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                while(open.get()) {
+                    in.clear();
+                    while(in.hasRemaining()) {
+                        if(channel.read(in) < 0) return;
+                    }
+
+                    in.flip();
+                    x = in.getDouble();
+                    y = in.getDouble();
+                    width = in.getDouble();
+                    height = in.getDouble();
+                    every = Math.max(1, in.getInt());
+                }
+            }catch(IOException e) {
+                // The viewer went away
+            } finally {
+                close();
+            }
+        }
+
+        // Cuts the viewport out of the frame, a width of 0 standing for the whole world
+        private void encode(Frame frame) {
+            Snapshot snapshot = frame.snapshot;
+            double x0 = x, y0 = y, w = width, h = height;
+            if(w <= 0 || h <= 0) {
+                x0 = 0;
+                y0 = 0;
+                w = frame.width;
+                h = frame.height;
+            }
+
+            int count = snapshot.getCount();
+            int max = frameHeaderBytes + count * entityBytes;
+            if(out.capacity() < max) out = ByteBuffer.allocateDirect(Math.max(max, out.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+
+            out.clear();
+            out.putInt(0); // Length, filled in below
+            out.putLong(snapshot.getTick());
+            out.putInt(frame.width);
+            out.putInt(frame.height);
+            out.putDouble(x0);
+            out.putDouble(y0);
+            out.putDouble(w);
+            out.putDouble(h);
+            out.putInt(0); // Count, filled in below
+
+            int visible = 0;
+            for(int i = 0; i < count; i++) {
+                double fx = (snapshot.x(i) - x0) / w, fy = (snapshot.y(i) - y0) / h;
+                if(fx < 0 || fx > 1 || fy < 0 || fy > 1)
+                    continue;
+
+                out.putShort((short)Math.round(fx * positionScale));
+                out.putShort((short)Math.round(fy * positionScale));
+                out.put((byte)(Math.min(snapshot.size(i), sizeMask) | (snapshot.alive(i) ? aliveBit : 0)));
+
+                double heading = snapshot.heading(i) / (2 * Math.PI);
+                float hue = snapshot.hue(i);
+                out.put((byte)Math.floorMod((int)Math.round(heading * 256), 256));
+                out.put((byte)((int)((hue - Math.floor(hue)) * 256) & 0xFF));
+                visible++;
+            }
+
+            out.putInt(0, out.position() - 4);
+            out.putInt(frameHeaderBytes - 4, visible);
+            out.flip();
+        }
+
+        private void close() {
+            if(!open.compareAndSet(true, false))
+                return;
+
+            viewers.remove(this);
+            LockSupport.unpark(sender);
+            try {
+                channel.close();
+            }catch(IOException e) {
+                // Nothing left to do with it
+            }
+        }
+    }
+}
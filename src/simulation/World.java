@@ -0,0 +1,156 @@
+package simulation;
+
+import internal.Config;
+import internal.FoodWeb;
+
+// The simulation state without any display, advanced one tick at a time
+@SuppressWarnings("All")
+public abstract class World implements AutoCloseable {
+
+    public static final int smallestBoid = 3;
+
+    protected final int species;
+    protected final Indexing indexing;
+    protected int width;
+    protected int height;
+    protected long ticks = 0;
+    protected final TickMetrics metrics;
+    protected final Config config = new Config();
+    protected FoodWeb web;
+    protected PopulationStats stats = null;
+    protected ViewServer viewers = null;
+
+    protected World(int species, int width, int height, Indexing indexing) {
+        this.metrics = new TickMetrics(species);
+        this.species = species;
+        this.indexing = indexing;
+        this.width = width;
+        this.height = height;
+        this.web = FoodWeb.chain(species);
+    }
+
+    // Threads only apply to array storage, the object graph is always updated on the calling thread
+    public static World create(Storage storage, Indexing indexing, int threads, int species, int width, int height) {
+        switch(storage) {
+            case DOUBLE : return new ArrayWorld(species, width, height, indexing, false, threads);
+            case FLOAT : return new ArrayWorld(species, width, height, indexing, true, threads);
+            default : return new ObjectWorld(species, width, height, indexing);
+        }
+    }
+
+    public abstract void step();
+
+    public void step(int n) {
+        for(int i = 0; i < n; i++)
+            step();
+    }
+
+    public abstract Snapshot snapshot(boolean withQuads);
+
+    // Whether checkpoint works, which it does not for worlds that only show one simulated elsewhere, as they hold
+    // nothing but what is drawn
+    public boolean canCheckpoint() {
+        return false;
+    }
+
+    // Copies the full state between ticks, the copy can be written while the world keeps running
+    public Checkpoint checkpoint() {
+        throw new IllegalStateException(getClass().getSimpleName() + " cannot be checkpointed, see canCheckpoint");
+    }
+
+    // Fills an empty world with the entities of a checkpoint, see Checkpoint.restore, which only creates worlds
+    // that can be checkpointed
+    void load(Checkpoint checkpoint) {
+        throw new IllegalStateException(getClass().getSimpleName() + " cannot be restored into");
+    }
+
+    public abstract void spawn(double x, double y, int size);
+
+    public abstract void clear();
+
+    public abstract int getCount();
+
+    // Adds the living entities of every species to population, food first, and returns the life left in the living boids
+    public abstract long census(int[] population);
+
+    // Ends every tick: publishes its counters and, while statistics are being kept or viewers served, a sample of
+    // the population and a frame for the viewers that want one
+    protected void endTick() {
+        metrics.endTick();
+        if(stats != null) stats.publish(this);
+        if(viewers != null) viewers.publish(this);
+    }
+
+    // Publishes a sample to the given statistics after every tick from now on, null stops
+    public void setStats(PopulationStats stats) {
+        if(stats != null && stats.getSpecies() != species)
+            throw new IllegalArgumentException("Statistics are for " + stats.getSpecies() + " species but the world has " + species);
+        this.stats = stats;
+    }
+
+    // Offers every tick from now on to the viewers of the given server, null stops
+    public void setViewers(ViewServer viewers) {
+        this.viewers = viewers;
+    }
+
+    // Lets go of any threads the world runs on, it is not stepped again after
+    @Override
+    public void close() {
+    }
+
+    public void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    // This world's own settings, changes apply from the next tick
+    public Config getConfig() {
+        return config;
+    }
+
+    public FoodWeb getFoodWeb() {
+        return web;
+    }
+
+    // Takes effect from the next tick
+    public void setFoodWeb(FoodWeb web) {
+        if(web.getSpecies() != species)
+            throw new IllegalArgumentException("Food web has " + web.getSpecies() + " species but the world has " + species);
+        this.web = web;
+    }
+
+    // Marks the species whose neighbours can only be flockmates, given which species are present. Boids of
+    // those only need their nearest flockmates found when flocking topologically, not every neighbour.
+    protected void findFlockmatesOnly(boolean[] present, boolean[] flockmatesOnly) {
+        for(int s = 1; s <= species; s++) {
+            flockmatesOnly[s] = true;
+            for(int other = 0; other <= species; other++)
+                if(present[other] && (web.relation(s, other) & ~FoodWeb.flock) != 0) flockmatesOnly[s] = false;
+        }
+    }
+
+    // Species of an entity from its size, food is species 0
+    public static int speciesOf(int size) {
+        return size == 0 ? 0 : size - smallestBoid + 1;
+    }
+
+    public int getSpecies() {
+        return species;
+    }
+
+    public TickMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
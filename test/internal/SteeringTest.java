@@ -0,0 +1,193 @@
+package internal;
+
+import internal.quadtree.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static internal.Boid.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Runs the fused Steering and the separate rule passes Boid used to make, one loop and one view check per rule,
+// on the same seeded neighbourhoods and expects the same velocity and hue from both
+class SteeringTest {
+
+    private static final double tolerance = 1e-9;
+
+    private static class Neighbour {
+
+        private final Vector position;
+        private final Vector velocity;
+        private final float hue;
+
+        private Neighbour(Vector position, Vector velocity, float hue) {
+            this.position = position;
+            this.velocity = velocity;
+            this.hue = hue;
+        }
+    }
+
+    @Test
+    void fusedSteeringMatchesTheSeparateRules() {
+        Random rng = new Random(42);
+        Config config = new Config();
+        config.noiseWeight = 0;
+        Steering steering = new Steering(config);
+
+        for(int boid = 0; boid < 500; boid++) {
+            Vector position = new Vector(500, 500);
+            Vector velocity = new Vector(rng.nextDouble() * 10 - 5, rng.nextDouble() * 10 - 5);
+            List<Neighbour> flock = neighbours(rng, position, rng.nextInt(30));
+            List<Neighbour> predators = neighbours(rng, position, rng.nextInt(4));
+            List<Neighbour> prey = neighbours(rng, position, rng.nextInt(4));
+
+            steering.begin(velocity.x, velocity.y);
+            for(Neighbour n : flock)
+                steering.flockmate(n.position.x - position.x, n.position.y - position.y, n.velocity.x, n.velocity.y, n.hue);
+            for(Neighbour n : predators)
+                steering.predator(n.position.x - position.x, n.position.y - position.y);
+            for(Neighbour n : prey)
+                steering.prey(n.position.x - position.x, n.position.y - position.y);
+            steering.finish();
+
+            // Every rule sees the velocity the previous one left, but what is in view was decided up front
+            Vector view = new Vector(velocity.x, velocity.y);
+            velocity.add(separation(position, view, velocity, flock, desiredSeparation, config.separationWeight));
+            velocity.add(alignment(position, view, velocity, flock, desiredAlignment, config.alignmentWeight));
+            velocity.add(cohesion(position, view, velocity, flock, desiredCohesion, config.cohesionWeight));
+            velocity.add(separation(position, view, velocity, predators, desiredAvoidance, config.avoidanceWeight));
+            velocity.add(cohesion(position, view, velocity, prey, desiredAttraction, config.attractionWeight));
+            velocity.limit(maxVelocity);
+
+            assertEquals(velocity.x, steering.vx(), tolerance, "vx of boid " + boid);
+            assertEquals(velocity.y, steering.vy(), tolerance, "vy of boid " + boid);
+            assertEquals(averageHue(position, view, flock, 0.3f), steering.hue(0.3f), 1e-6, "hue of boid " + boid);
+        }
+    }
+
+    // Some within every rule's distance, some only in view range and some out of it
+    private static List<Neighbour> neighbours(Random rng, Vector around, int count) {
+        List<Neighbour> neighbours = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            double angle = rng.nextDouble() * 2 * Math.PI, distance = rng.nextDouble() * viewRange * 1.2;
+            Vector position = new Vector(around.x + Math.cos(angle) * distance, around.y + Math.sin(angle) * distance);
+            Vector velocity = new Vector(rng.nextDouble() * 10 - 5, rng.nextDouble() * 10 - 5);
+            neighbours.add(new Neighbour(position, velocity, rng.nextFloat()));
+        }
+        return neighbours;
+    }
+
+    // The view check calculateView made before every pass
+    private static boolean visible(Vector position, Vector view, Neighbour n) {
+        double d = Vector.dist(position, n.position);
+        if(d == 0 || d > viewRange)
+            return false;
+
+        return Vector.angleBetween(Vector.sub(n.position, position), view) < viewAngle;
+    }
+
+    // Separation, and avoidance given the predators
+    private static Vector separation(Vector position, Vector view, Vector velocity, List<Neighbour> boids, double desired, double weight) {
+        Vector steer = new Vector();
+        int count = 0;
+
+        for(Neighbour b : boids) {
+            if(!visible(position, view, b))
+                continue;
+
+            double d = Vector.dist(position, b.position);
+            if(d < desired) {
+                Vector diff = Vector.sub(position, b.position);
+                diff.normalize();
+                diff.div(d);
+                steer.add(diff);
+                count++;
+            }
+        }
+
+        if(count > 0)
+            steer.div(count);
+
+        if(steer.mag() > 0) {
+            steer.normalize();
+            steer.mult(maxVelocity);
+            steer.sub(velocity);
+            steer.limit(maxForce);
+        }
+
+        steer.mult(weight);
+        return steer;
+    }
+
+    private static Vector alignment(Vector position, Vector view, Vector velocity, List<Neighbour> boids, double desired, double weight) {
+        Vector steer = new Vector();
+        int count = 0;
+
+        for(Neighbour b : boids) {
+            if(!visible(position, view, b))
+                continue;
+
+            if(Vector.dist(position, b.position) < desired) {
+                steer.add(b.velocity);
+                count++;
+            }
+        }
+
+        if(count > 0) {
+            steer.div(count);
+            steer.normalize();
+            steer.mult(maxVelocity);
+            steer.sub(velocity);
+            steer.limit(maxForce);
+        }
+
+        steer.mult(weight);
+        return steer;
+    }
+
+    // Cohesion, and attraction given the prey
+    private static Vector cohesion(Vector position, Vector view, Vector velocity, List<Neighbour> boids, double desired, double weight) {
+        Vector target = new Vector();
+        int count = 0;
+
+        for(Neighbour b : boids) {
+            if(!visible(position, view, b))
+                continue;
+
+            double d = Vector.dist(position, b.position);
+            if(d > 0 && d < desired) {
+                target.add(b.position);
+                count++;
+            }
+        }
+
+        if(count == 0) return target;
+        else target.div(count);
+
+        Vector steer = Vector.sub(target, position);
+        steer.normalize();
+        steer.mult(maxVelocity);
+        steer.sub(velocity);
+        steer.limit(maxForce);
+
+        steer.mult(weight);
+        return steer;
+    }
+
+    // Seen with the view the rules had, as avgHue did after they ran
+    private static float averageHue(Vector position, Vector view, List<Neighbour> flock, float own) {
+        int visible = 0;
+        float hueSum = 0;
+
+        for(Neighbour b : flock) {
+            if(visible(position, view, b)) {
+                visible++;
+                hueSum += b.hue;
+            }
+        }
+
+        return visible == 0 ? own : hueSum / visible;
+    }
+}
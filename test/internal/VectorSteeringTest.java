@@ -0,0 +1,86 @@
+package internal;
+
+import internal.spatial.IntList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static internal.Boid.viewRange;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+// The vector batches against the scalar Steering on the same seeded batches, of every length up to a few vectors so
+// that full vectors, masked lanes and the scalar tail all take part. Surefire adds the incubator module for this.
+class VectorSteeringTest {
+
+    private static final double tolerance = 1e-6;
+
+    @AfterEach
+    void scalarAgain() {
+        Steering.vectorised = false;
+    }
+
+    @Test
+    void batchesMatchTheScalarRules() {
+        Config config = new Config();
+        config.noiseWeight = 0;
+        Steering scalar = new Steering(config);
+        Steering.vectorised = true;
+        Steering vector = Steering.create(config);
+        assertInstanceOf(VectorSteering.class, vector, "run with --add-modules jdk.incubator.vector");
+
+        Random rng = new Random(42);
+        for(int n = 0; n <= 35; n++) {
+            for(int batch = 0; batch < 20; batch++) {
+                // A standing boid sees nothing, which the vector rules skip to the tail for
+                double vx = batch == 0 ? 0 : rng.nextDouble() * 10 - 5, vy = batch == 0 ? 0 : rng.nextDouble() * 10 - 5;
+                double[] dx = offsets(rng, n), dy = offsets(rng, n);
+                double[] nvx = values(rng, n, 10), nvy = values(rng, n, 10), hue = values(rng, n, 1);
+
+                // Zero offsets stand for a neighbour on top of the boid, which is never seen
+                if(n > 0) dx[batch % n] = dy[batch % n] = 0;
+
+                IntList scalarEatable = new IntList(), vectorEatable = new IntList();
+                run(scalar, vx, vy, dx, dy, nvx, nvy, hue, n, scalarEatable);
+                run(vector, vx, vy, dx, dy, nvx, nvy, hue, n, vectorEatable);
+
+                String batchOf = "batch " + batch + " of " + n;
+                assertEquals(scalar.vx(), vector.vx(), tolerance, "vx, " + batchOf);
+                assertEquals(scalar.vy(), vector.vy(), tolerance, "vy, " + batchOf);
+                assertEquals(scalar.hue(0.3f), vector.hue(0.3f), tolerance, "hue, " + batchOf);
+                assertArrayEquals(ids(scalarEatable), ids(vectorEatable), "eatable, " + batchOf);
+            }
+        }
+    }
+
+    // The same batch as flock, predators and prey at once
+    private static void run(Steering steering, double vx, double vy, double[] dx, double[] dy, double[] nvx, double[] nvy,
+                            double[] hue, int n, IntList eatable) {
+        steering.begin(vx, vy);
+        steering.flock(dx, dy, nvx, nvy, hue, n);
+        steering.predators(dy, dx, n);
+        steering.prey(dx, dy, n, eatable);
+        steering.finish();
+    }
+
+    // Spread over and a little past the view range, so every distance test goes both ways
+    private static double[] offsets(Random rng, int n) {
+        return values(rng, n, viewRange * 2.4);
+    }
+
+    private static double[] values(Random rng, int n, double spread) {
+        double[] values = new double[n];
+        for(int i = 0; i < n; i++)
+            values[i] = (rng.nextDouble() - 0.5) * spread;
+        return values;
+    }
+
+    private static int[] ids(IntList list) {
+        int[] ids = new int[list.size()];
+        for(int i = 0; i < ids.length; i++)
+            ids[i] = list.get(i);
+        return ids;
+    }
+}
@@ -0,0 +1,51 @@
+package internal.spatial;
+
+import internal.quadtree.LinearQuadTreeIndex;
+import org.junit.jupiter.api.Test;
+
+import static internal.spatial.Points.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+// The Morton sorted quadtree has to find the same ids as the grid, around every entity and the short way around the
+// world edges, whatever its bucket size and depth. Part of the entities sit on one spot, more of them than a bucket
+// holds, and some on the edges of the world.
+class LinearQuadTreeTest {
+
+    private final Points points = new Points(2000);
+
+    LinearQuadTreeTest() {
+        for(int i = 0; i < 100; i++) {
+            points.x[i] = 123.4;
+            points.y[i] = 56.7;
+        }
+
+        for(int i = 100; i < 120; i += 2) {
+            points.x[i] = 0;
+            points.y[i + 1] = 0;
+        }
+    }
+
+    @Test
+    void findsWhatTheGridFinds() {
+        UniformGrid grid = new UniformGrid(range);
+        grid.build(points, points.ids, width, height);
+
+        int[][] shapes = {{1, 15}, {8, 10}, {32, 10}, {32, 3}};
+        for(int[] shape : shapes) {
+            LinearQuadTreeIndex tree = new LinearQuadTreeIndex(shape[0], shape[1]);
+            tree.build(points, points.ids, width, height);
+
+            for(int id = 0; id < points.count(); id++) {
+                int at = id;
+                assertArrayEquals(query(grid, id), query(tree, id),
+                    () -> "ids around " + at + " with buckets of " + shape[0] + " at most " + shape[1] + " deep");
+            }
+        }
+    }
+
+    private int[] query(NeighbourIndex index, int id) {
+        IntList out = new IntList();
+        index.query(points.x[id], points.y[id], range, out);
+        return sorted(out);
+    }
+}
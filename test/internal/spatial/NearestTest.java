@@ -0,0 +1,71 @@
+package internal.spatial;
+
+import internal.quadtree.LinearQuadTreeIndex;
+import internal.quadtree.QuadTreeIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static internal.spatial.Points.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Every index has to find the same k nearest as a scan over all points, the short way around the world edges
+class NearestTest {
+
+    private static final int k = 7;
+
+    private final Points points = new Points(1500);
+
+    @Test
+    void gridFindsTheNearest() {
+        check(new UniformGrid(range));
+    }
+
+    @Test
+    void quadTreeFindsTheNearest() {
+        check(new QuadTreeIndex());
+    }
+
+    @Test
+    void linearQuadTreeFindsTheNearest() {
+        check(new LinearQuadTreeIndex(32, 10));
+    }
+
+    private void check(NeighbourIndex index) {
+        index.build(points, points.ids, width, height);
+        KNearest nearest = new KNearest(k);
+
+        for(int self = 0; self < points.count(); self++) {
+            int query = self;
+            nearest.reset(k);
+            index.nearest(points.x[query], points.y[query], range, (id, dx, dy) -> {
+                assertEquals(points.dx(query, id), dx, 1e-9, "dx to " + id);
+                assertEquals(points.dy(query, id), dy, 1e-9, "dy to " + id);
+                return id != query;
+            }, nearest);
+
+            IntList found = new IntList();
+            for(int i = 0; i < nearest.size(); i++)
+                found.add(nearest.get(i));
+            assertArrayEquals(bruteForce(query), sorted(found), "nearest to " + query);
+        }
+    }
+
+    private int[] bruteForce(int query) {
+        Integer[] inRange = new Integer[points.count()];
+        double[] d2 = new double[points.count()];
+        int n = 0;
+        for(int id = 0; id < points.count(); id++) {
+            double dx = points.dx(query, id), dy = points.dy(query, id);
+            d2[id] = dx*dx + dy*dy;
+            if(id != query && d2[id] <= range * range) inRange[n++] = id;
+        }
+
+        Arrays.sort(inRange, 0, n, (a, b) -> Double.compare(d2[a], d2[b]));
+        IntList kept = new IntList();
+        for(int i = 0; i < Math.min(k, n); i++)
+            kept.add(inRange[i]);
+        return sorted(kept);
+    }
+}
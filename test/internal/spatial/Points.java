@@ -0,0 +1,91 @@
+package internal.spatial;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static internal.spatial.UniformGrid.wrap;
+
+// Seeded entities spread over the small world the index tests share, queried with the view range of a boid.
+// Sizes alternate between two species. The arrays may be changed before an index is built over them.
+class Points implements Motions {
+
+    static final double width = 400;
+    static final double height = 300;
+    static final double range = 50;
+
+    final double[] x;
+    final double[] y;
+    final double[] vx;
+    final double[] vy;
+    final float[] hue;
+    final IntList ids = new IntList();
+
+    Points(int count) {
+        x = new double[count];
+        y = new double[count];
+        vx = new double[count];
+        vy = new double[count];
+        hue = new float[count];
+
+        Random rng = new Random(42);
+        for(int i = 0; i < count; i++) {
+            x[i] = rng.nextDouble() * width;
+            y[i] = rng.nextDouble() * height;
+            vx[i] = rng.nextDouble() * 10 - 5;
+            vy[i] = rng.nextDouble() * 10 - 5;
+            hue[i] = rng.nextFloat();
+            ids.add(i);
+        }
+    }
+
+    int count() {
+        return x.length;
+    }
+
+    @Override
+    public double x(int id) {
+        return x[id];
+    }
+
+    @Override
+    public double y(int id) {
+        return y[id];
+    }
+
+    @Override
+    public double vx(int id) {
+        return vx[id];
+    }
+
+    @Override
+    public double vy(int id) {
+        return vy[id];
+    }
+
+    @Override
+    public float hue(int id) {
+        return hue[id];
+    }
+
+    @Override
+    public int size(int id) {
+        return 1 + id % 2;
+    }
+
+    // Offsets from one entity to another the short way around the world
+    double dx(int from, int to) {
+        return wrap(x[to] - x[from], width);
+    }
+
+    double dy(int from, int to) {
+        return wrap(y[to] - y[from], height);
+    }
+
+    static int[] sorted(IntList ids) {
+        int[] sorted = new int[ids.size()];
+        for(int i = 0; i < sorted.length; i++)
+            sorted[i] = ids.get(i);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
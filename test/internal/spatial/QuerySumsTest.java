@@ -0,0 +1,115 @@
+package internal.spatial;
+
+import internal.quadtree.LinearQuadTreeIndex;
+import internal.quadtree.QuadTreeIndex;
+import org.junit.jupiter.api.Test;
+
+import static internal.spatial.Points.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Barnes-Hut sums of both quadtrees against a scan over all entities, the short way around the world edges. With an
+// opening angle of 0 nothing is grouped and the ids must be exactly those in range, and with any other the groups and
+// the ids left over must add up to what is in range. Only one of the two species is asked for each time.
+class QuerySumsTest {
+
+    private static final double near = 25;
+
+    private final Points points = new Points(3000);
+
+    @Test
+    void quadTreeWithoutGroupsFindsEveryIdInRange() {
+        exact(new QuadTreeIndex());
+    }
+
+    @Test
+    void linearQuadTreeWithoutGroupsFindsEveryIdInRange() {
+        exact(new LinearQuadTreeIndex(8, 10));
+    }
+
+    @Test
+    void quadTreeGroupsAddUpToEverythingInRange() {
+        grouped(new QuadTreeIndex());
+    }
+
+    @Test
+    void linearQuadTreeGroupsAddUpToEverythingInRange() {
+        grouped(new LinearQuadTreeIndex(8, 10));
+    }
+
+    private void exact(NeighbourIndex index) {
+        index.build(points, points.ids, width, height);
+        index.sum(points);
+        IntList out = new IntList();
+
+        for(int query = 0; query < points.count(); query++) {
+            out.clear();
+            int q = query;
+            index.querySums(points.x[q], points.y[q], range, near, 0, points.size(q),
+                (count, sx, sy, svx, svy, shue) -> { throw new AssertionError("Grouped " + count + " around " + q); }, out);
+
+            assertArrayEquals(sorted(inRange(q)), sorted(out), "ids around " + q);
+        }
+    }
+
+    private void grouped(NeighbourIndex index) {
+        index.build(points, points.ids, width, height);
+        index.sum(points);
+        IntList out = new IntList();
+        int groups = 0;
+
+        for(int query = 0; query < points.count(); query++) {
+            int q = query;
+            double[] found = new double[6];
+            out.clear();
+            int[] visits = new int[1];
+            index.querySums(points.x[q], points.y[q], range, near, 0.5, points.size(q), (count, sx, sy, svx, svy, shue) -> {
+                found[0] += count;
+                found[1] += sx - count * points.x[q];
+                found[2] += sy - count * points.y[q];
+                found[3] += svx;
+                found[4] += svy;
+                found[5] += shue;
+                visits[0]++;
+            }, out);
+            groups += visits[0];
+
+            for(int i = 0; i < out.size(); i++)
+                add(found, q, out.get(i));
+
+            double[] expected = new double[6];
+            IntList all = inRange(q);
+            for(int i = 0; i < all.size(); i++)
+                add(expected, q, all.get(i));
+
+            assertEquals(expected[0], found[0], "count around " + q);
+            for(int f = 1; f < 6; f++)
+                assertEquals(expected[f], found[f], 1e-6, "sum " + f + " around " + q);
+        }
+
+        // Otherwise the test says nothing about the groups
+        assertTrue(groups > points.count(), "groups handed out: " + groups);
+    }
+
+    // Count, offsets, velocities and hue, the offsets the short way around
+    private void add(double[] sums, int query, int id) {
+        sums[0]++;
+        sums[1] += points.dx(query, id);
+        sums[2] += points.dy(query, id);
+        sums[3] += points.vx[id];
+        sums[4] += points.vy[id];
+        sums[5] += points.hue[id];
+    }
+
+    // Every entity of the same size within range, the one queried around included
+    private IntList inRange(int query) {
+        IntList found = new IntList();
+        for(int id = 0; id < points.count(); id++) {
+            double dx = points.dx(query, id), dy = points.dy(query, id);
+            if(points.size(id) == points.size(query) && dx*dx + dy*dy <= range * range)
+                found.add(id);
+        }
+        return found;
+    }
+}
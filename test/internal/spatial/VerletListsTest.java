@@ -0,0 +1,93 @@
+package internal.spatial;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static internal.spatial.Points.*;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Lists reused while nothing has moved half the skin must still hold every neighbour a fresh query finds, and they
+// must go stale as soon as something has
+class VerletListsTest {
+
+    private static final double skin = 20;
+
+    private final Points points = new Points(1500);
+    private final VerletLists lists = new VerletLists(skin);
+    private final NeighbourIndex index = new UniformGrid(range);
+
+    VerletListsTest() {
+        index.build(points, points.ids, width, height);
+        lists.mark(points, points.count(), 0, width, height);
+        for(int id = 0; id < points.count(); id++)
+            lists.fill(id, index, points, range);
+    }
+
+    @Test
+    void reusedListsHoldEveryNeighbourInRange() {
+        Random rng = new Random(7);
+        for(int tick = 0; tick < 4; tick++) {
+            // Every entity drifts the same long way, plus up to 2 of its own, so none moves half the skin from the rest
+            for(int id = 0; id < points.count(); id++) {
+                double angle = rng.nextDouble() * 2 * Math.PI, step = rng.nextDouble() * 2;
+                move(id, 15 + Math.cos(angle) * step, -5 + Math.sin(angle) * step);
+            }
+
+            assertFalse(lists.isStale(points, points.count(), 0, width, height), "stale after tick " + tick);
+            assertListsHoldEveryNeighbour("after tick " + tick);
+        }
+    }
+
+    // Moves count from the middle of all of them, so one moving alone has to leave the rest more than the skin behind
+    @Test
+    void oneEntityMovingLessThanTheSkinFromTheRestKeepsTheLists() {
+        move(0, skin - 1, 0);
+        assertFalse(lists.isStale(points, points.count(), 0, width, height));
+        assertListsHoldEveryNeighbour("after one moved");
+
+        move(0, 2, 0);
+        assertTrue(lists.isStale(points, points.count(), 0, width, height));
+    }
+
+    // Neither spreads the moves by more than the skin on either axis, but both are more than half of it from the middle
+    @Test
+    void goesStaleOnceEntitiesMoveHalfTheSkinFromTheMiddle() {
+        assertFalse(lists.isStale(points, points.count(), 0, width, height));
+
+        move(0, skin * 0.45, skin * 0.45);
+        move(1, -skin * 0.45, -skin * 0.45);
+        assertTrue(lists.isStale(points, points.count(), 0, width, height));
+    }
+
+    @Test
+    void goesStaleWhenEntitiesComeOrGo() {
+        assertTrue(lists.isStale(points, points.count() - 1, 0, width, height));
+        assertTrue(lists.isStale(points, points.count(), 1, width, height));
+    }
+
+    private void assertListsHoldEveryNeighbour(String when) {
+        NeighbourIndex fresh = new UniformGrid(range);
+        fresh.build(points, points.ids, width, height);
+        IntList found = new IntList();
+        for(int id = 0; id < points.count(); id++) {
+            found.clear();
+            fresh.query(points.x[id], points.y[id], range, found);
+            int[] listed = sorted(lists.get(id));
+            for(int i = 0; i < found.size(); i++) {
+                int other = found.get(i);
+                double dx = points.dx(id, other), dy = points.dy(id, other);
+                if(other != id && dx*dx + dy*dy <= range * range)
+                    assertTrue(Arrays.binarySearch(listed, other) >= 0, other + " missing from the list of " + id + " " + when);
+            }
+        }
+    }
+
+    // Moves an entity and wraps it back into the world
+    private void move(int id, double dx, double dy) {
+        points.x[id] = ((points.x[id] + dx) % width + width) % width;
+        points.y[id] = ((points.y[id] + dy) % height + height) % height;
+    }
+}
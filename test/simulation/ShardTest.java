@@ -0,0 +1,61 @@
+package simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Two shards over loopback against one world stepping the same start, which flocking without noise makes
+// deterministic. Every entity has to end up where the single world puts it.
+class ShardTest {
+
+    private static final int width = 400, height = 300, ticks = 20;
+
+    @Test
+    void twoShardsMatchOneWorld() throws Exception {
+        Checkpoint initial;
+        try(World world = World.create(Storage.DOUBLE, Indexing.QUADTREE, 1, 5, width, height)) {
+            world.getConfig().flockingMode = true;
+            world.getConfig().noiseWeight = 0;
+            Random rng = new Random(42);
+            for(int i = 0; i < 300; i++)
+                world.spawn(rng.nextDouble() * width, rng.nextDouble() * height, World.smallestBoid);
+            initial = world.checkpoint();
+        }
+
+        int[] ports = Headless.freePorts(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // Each shard connects to its right neighbour before accepting its left one, so both start at once
+            List<Future<Checkpoint>> parts = List.of(pool.submit(() -> runShard(initial, 0, ports)),
+                pool.submit(() -> runShard(initial, 1, ports)));
+            Checkpoint merged = Checkpoint.merge(List.of(parts.get(0).get(), parts.get(1).get()));
+
+            try(World reference = initial.restore(Storage.DOUBLE, Indexing.QUADTREE, 1)) {
+                reference.step(ticks);
+                Checkpoint expected = Checkpoint.merge(List.of(reference.checkpoint()));
+
+                assertArrayEquals(expected.speciesCounts(), merged.speciesCounts());
+                assertEquals(expected.count, expected.matches(merged, 0.01), "entities with a twin in the shards");
+            }
+        }finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Checkpoint runShard(Checkpoint initial, int index, int[] ports) throws Exception {
+        try(World world = initial.restore(Storage.DOUBLE, Indexing.QUADTREE, 1);
+            Shard shard = new Shard((ArrayWorld)world, index, 2, ports)) {
+            for(int t = 0; t < ticks; t++)
+                shard.step();
+            shard.finish();
+            return world.checkpoint();
+        }
+    }
+}